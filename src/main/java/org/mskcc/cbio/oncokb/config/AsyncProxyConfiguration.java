@@ -0,0 +1,23 @@
+package org.mskcc.cbio.oncokb.config;
+
+import org.mskcc.cbio.oncokb.service.AsyncProxyExecutor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class AsyncProxyConfiguration implements WebMvcConfigurer {
+
+    private final AsyncProxyExecutor asyncProxyExecutor;
+
+    public AsyncProxyConfiguration(AsyncProxyExecutor asyncProxyExecutor) {
+        this.asyncProxyExecutor = asyncProxyExecutor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        // The streamed bodies of the proxied responses are written on the proxy pool, bounded by the upstream timeouts
+        configurer.setTaskExecutor(asyncProxyExecutor.getTaskExecutor());
+        configurer.setDefaultTimeout(0);
+    }
+}
@@ -1,9 +1,11 @@
 package org.mskcc.cbio.oncokb.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
 import org.mskcc.cbio.oncokb.config.cache.*;
 import org.mskcc.oncokb.meta.enumeration.RedisType;
 import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CachingConfigurerSupport;
 import org.springframework.cache.annotation.EnableCaching;
@@ -31,13 +33,14 @@ import io.github.jhipster.config.JHipsterProperties;
 @EnableCaching
 public class CacheConfiguration extends CachingConfigurerSupport {
 
-    private final String PROP_PREFIX = "application.redis";
-    private final String PROP_NAME = "enabled";
+    private static final String PROP_PREFIX = "application.redis";
+    private static final String PROP_NAME = "enabled";
 
     @Bean
     @ConditionalOnProperty(prefix = PROP_PREFIX, name = PROP_NAME, havingValue = "false", matchIfMissing = true)
-    public org.springframework.cache.CacheManager cacheManager() {
-        return new CustomCacheManager();
+    public org.springframework.cache.CacheManager cacheManager(JHipsterProperties jHipsterProperties, MeterRegistry meterRegistry) {
+        JHipsterProperties.Cache.Caffeine caffeine = jHipsterProperties.getCache().getCaffeine();
+        return new CustomCacheManager(caffeine.getMaxEntries(), caffeine.getTimeToLiveSeconds(), meterRegistry);
     }
 
     @Bean
@@ -107,9 +110,11 @@ public class CacheConfiguration extends CachingConfigurerSupport {
             createCache(cm, org.mskcc.cbio.oncokb.config.cache.UserCacheResolver.USERS_BY_LOGIN_CACHE, jcacheConfiguration, cacheNameResolver);
             createCache(cm, org.mskcc.cbio.oncokb.config.cache.UserCacheResolver.USERS_BY_EMAIL_CACHE, jcacheConfiguration, cacheNameResolver);
             createCache(cm, org.mskcc.cbio.oncokb.config.cache.UserCacheResolver.ALL_USERS_CACHE, jcacheConfiguration, cacheNameResolver);
+            createCache(cm, org.mskcc.cbio.oncokb.config.cache.UserCacheResolver.RATE_LIMIT_TIER_BY_LOGIN_CACHE, jcacheConfiguration, cacheNameResolver);
 
             createCache(cm, org.mskcc.cbio.oncokb.config.cache.TokenCacheResolver.TOKEN_BY_UUID_CACHE, jcacheConfiguration, cacheNameResolver);
             createCache(cm, org.mskcc.cbio.oncokb.config.cache.TokenCacheResolver.TOKENS_BY_USER_LOGIN_CACHE, jcacheConfiguration, cacheNameResolver);
+            createCache(cm, org.mskcc.cbio.oncokb.config.cache.TokenCacheResolver.TOKEN_PRINCIPAL_BY_UUID_CACHE, jcacheConfiguration, cacheNameResolver);
 
             createCache(cm, org.mskcc.cbio.oncokb.config.cache.CompanyCacheResolver.COMPANIES_BY_ID_CACHE, jcacheConfiguration, cacheNameResolver);
             createCache(cm, org.mskcc.cbio.oncokb.config.cache.CompanyCacheResolver.COMPANIES_BY_NAME_CACHE, jcacheConfiguration, cacheNameResolver);
@@ -117,6 +122,12 @@ public class CacheConfiguration extends CachingConfigurerSupport {
         };
     }
 
+    @Bean
+    @ConditionalOnProperty(prefix = PROP_PREFIX, name = PROP_NAME, havingValue = "true")
+    public static NearCacheManagerPostProcessor nearCacheManagerPostProcessor(ObjectProvider<ApplicationProperties> applicationProperties, ObjectProvider<RedissonClient> redissonClient, ObjectProvider<CacheNameResolver> cacheNameResolver) {
+        return new NearCacheManagerPostProcessor(applicationProperties, redissonClient, cacheNameResolver);
+    }
+
     @Bean
     public CacheResolver tokenCacheResolver(CacheManager cm, ApplicationProperties applicationProperties, CacheNameResolver cacheNameResolver) {
         return new TokenCacheResolver(cm, applicationProperties, cacheNameResolver);
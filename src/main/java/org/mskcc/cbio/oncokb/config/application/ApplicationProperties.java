@@ -38,6 +38,17 @@ public class ApplicationProperties {
     private String githubToken;
     private Boolean dbReadOnly;
     private RecaptchaProperties recaptcha;
+    private ProxyClientProperties proxyClient = new ProxyClientProperties();
+    private TokenStatsProperties tokenStats = new TokenStatsProperties();
+    private NearCacheProperties nearCache = new NearCacheProperties();
+    private InvalidTokenCacheProperties invalidTokenCache = new InvalidTokenCacheProperties();
+    private RateLimitProperties rateLimit = new RateLimitProperties();
+    private AsyncProxyProperties asyncProxy = new AsyncProxyProperties();
+    private ProxyCacheProperties proxyCache = new ProxyCacheProperties();
+    private RequestCoalescingProperties requestCoalescing = new RequestCoalescingProperties();
+    private ResilienceProperties resilience = new ResilienceProperties();
+    private DataReleaseSpoolProperties dataReleaseSpool = new DataReleaseSpoolProperties();
+    private UsageSummaryCacheProperties usageSummaryCache = new UsageSummaryCacheProperties();
 
     public String getName() {
         return name;
@@ -155,6 +166,10 @@ public class ApplicationProperties {
         this.frontend = frontend;
     }
 
+    public List<String> getTokenUsageCheckWhitelists() {
+        return getList(this.getTokenUsageCheckWhitelist());
+    }
+
     public List<String> getAcademicEmailClarifyDomains() {
         return getList(this.getAcademicEmailClarifyDomain());
     }
@@ -197,4 +212,92 @@ public class ApplicationProperties {
     public void setRecaptcha(RecaptchaProperties recaptcha) {
         this.recaptcha = recaptcha;
     }
+
+    public ProxyClientProperties getProxyClient() {
+        return proxyClient;
+    }
+
+    public void setProxyClient(ProxyClientProperties proxyClient) {
+        this.proxyClient = proxyClient;
+    }
+
+    public TokenStatsProperties getTokenStats() {
+        return tokenStats;
+    }
+
+    public void setTokenStats(TokenStatsProperties tokenStats) {
+        this.tokenStats = tokenStats;
+    }
+
+    public NearCacheProperties getNearCache() {
+        return nearCache;
+    }
+
+    public void setNearCache(NearCacheProperties nearCache) {
+        this.nearCache = nearCache;
+    }
+
+    public InvalidTokenCacheProperties getInvalidTokenCache() {
+        return invalidTokenCache;
+    }
+
+    public void setInvalidTokenCache(InvalidTokenCacheProperties invalidTokenCache) {
+        this.invalidTokenCache = invalidTokenCache;
+    }
+
+    public RateLimitProperties getRateLimit() {
+        return rateLimit;
+    }
+
+    public void setRateLimit(RateLimitProperties rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    public AsyncProxyProperties getAsyncProxy() {
+        return asyncProxy;
+    }
+
+    public void setAsyncProxy(AsyncProxyProperties asyncProxy) {
+        this.asyncProxy = asyncProxy;
+    }
+
+    public ProxyCacheProperties getProxyCache() {
+        return proxyCache;
+    }
+
+    public void setProxyCache(ProxyCacheProperties proxyCache) {
+        this.proxyCache = proxyCache;
+    }
+
+    public RequestCoalescingProperties getRequestCoalescing() {
+        return requestCoalescing;
+    }
+
+    public void setRequestCoalescing(RequestCoalescingProperties requestCoalescing) {
+        this.requestCoalescing = requestCoalescing;
+    }
+
+    public ResilienceProperties getResilience() {
+        return resilience;
+    }
+
+    public void setResilience(ResilienceProperties resilience) {
+        this.resilience = resilience;
+    }
+
+    public DataReleaseSpoolProperties getDataReleaseSpool() {
+        return dataReleaseSpool;
+    }
+
+    public void setDataReleaseSpool(DataReleaseSpoolProperties dataReleaseSpool) {
+        this.dataReleaseSpool = dataReleaseSpool;
+    }
+
+    public UsageSummaryCacheProperties getUsageSummaryCache() {
+        return usageSummaryCache;
+    }
+
+    public void setUsageSummaryCache(UsageSummaryCacheProperties usageSummaryCache) {
+        this.usageSummaryCache = usageSummaryCache;
+    }
 }
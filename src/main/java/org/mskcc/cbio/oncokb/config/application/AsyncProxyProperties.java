@@ -0,0 +1,67 @@
+package org.mskcc.cbio.oncokb.config.application;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings of the asynchronous execution of the requests proxied to oncokb core.
+ */
+public class AsyncProxyProperties {
+    // Release the servlet thread while the proxied request is executed
+    private boolean enabled = false;
+    private int threads = 200;
+    private int queueCapacity = 1000;
+    // The route is the longest token usage check route matching the request, or "other"
+    private int maxInFlightPerRoute = 100;
+    private Map<String, Integer> routeMaxInFlight = new HashMap<>();
+    // Sent in the Retry-After header when a route is saturated
+    private int retryAfterSeconds = 1;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getMaxInFlightPerRoute() {
+        return maxInFlightPerRoute;
+    }
+
+    public void setMaxInFlightPerRoute(int maxInFlightPerRoute) {
+        this.maxInFlightPerRoute = maxInFlightPerRoute;
+    }
+
+    public Map<String, Integer> getRouteMaxInFlight() {
+        return routeMaxInFlight;
+    }
+
+    public void setRouteMaxInFlight(Map<String, Integer> routeMaxInFlight) {
+        this.routeMaxInFlight = routeMaxInFlight;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public void setRetryAfterSeconds(int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
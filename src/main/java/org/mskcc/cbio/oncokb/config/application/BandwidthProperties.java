@@ -0,0 +1,34 @@
+package org.mskcc.cbio.oncokb.config.application;
+
+/**
+ * A token bucket bandwidth: up to {@code capacity} tokens, refilled by {@code refillTokens} every {@code refillPeriodSeconds}.
+ */
+public class BandwidthProperties {
+    private long capacity;
+    private long refillTokens;
+    private long refillPeriodSeconds = 1;
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(long capacity) {
+        this.capacity = capacity;
+    }
+
+    public long getRefillTokens() {
+        return refillTokens;
+    }
+
+    public void setRefillTokens(long refillTokens) {
+        this.refillTokens = refillTokens;
+    }
+
+    public long getRefillPeriodSeconds() {
+        return refillPeriodSeconds;
+    }
+
+    public void setRefillPeriodSeconds(long refillPeriodSeconds) {
+        this.refillPeriodSeconds = refillPeriodSeconds;
+    }
+}
@@ -0,0 +1,69 @@
+package org.mskcc.cbio.oncokb.config.application;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of the local disk copies of the data release files downloaded from oncokb core.
+ */
+public class DataReleaseSpoolProperties {
+    private boolean enabled = false;
+    // The files of the spool left in the directory are deleted on startup, the other files are kept
+    private String directory = System.getProperty("java.io.tmpdir") + "/oncokb-data-release";
+    // The least recently used files are deleted above this size
+    private long maxSizeBytes = 10L * 1024 * 1024 * 1024;
+    // The only paths spooled, requested with a single version parameter like sqlDump?version=v4.26
+    private List<String> paths = new ArrayList<>();
+    // Release versions spooled and downloaded in advance, the current data version of oncokb core is always included.
+    // The requests for other versions are streamed from oncokb core.
+    private List<String> versions = new ArrayList<>();
+    private int dataVersionCheckSeconds = 60;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public long getMaxSizeBytes() {
+        return maxSizeBytes;
+    }
+
+    public void setMaxSizeBytes(long maxSizeBytes) {
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    public void setPaths(List<String> paths) {
+        this.paths = paths;
+    }
+
+    public List<String> getVersions() {
+        return versions;
+    }
+
+    public void setVersions(List<String> versions) {
+        this.versions = versions;
+    }
+
+    public int getDataVersionCheckSeconds() {
+        return dataVersionCheckSeconds;
+    }
+
+    public void setDataVersionCheckSeconds(int dataVersionCheckSeconds) {
+        this.dataVersionCheckSeconds = dataVersionCheckSeconds;
+    }
+}
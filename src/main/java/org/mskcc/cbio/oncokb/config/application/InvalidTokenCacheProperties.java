@@ -0,0 +1,54 @@
+package org.mskcc.cbio.oncokb.config.application;
+
+/**
+ * Settings used to reject unknown bearer tokens without a database lookup.
+ */
+public class InvalidTokenCacheProperties {
+    private int timeToLiveSeconds = 60;
+    private long maxEntries = 100000;
+    // Tokens created or renewed on another pod are only known after the next rebuild,
+    // so the bloom filter should only be enabled where that delay is acceptable.
+    private boolean bloomFilterEnabled = false;
+    private int bloomFilterRebuildSeconds = 60;
+    private double bloomFilterFalsePositiveProbability = 0.01;
+
+    public int getTimeToLiveSeconds() {
+        return timeToLiveSeconds;
+    }
+
+    public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+        this.timeToLiveSeconds = timeToLiveSeconds;
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(long maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public boolean isBloomFilterEnabled() {
+        return bloomFilterEnabled;
+    }
+
+    public void setBloomFilterEnabled(boolean bloomFilterEnabled) {
+        this.bloomFilterEnabled = bloomFilterEnabled;
+    }
+
+    public int getBloomFilterRebuildSeconds() {
+        return bloomFilterRebuildSeconds;
+    }
+
+    public void setBloomFilterRebuildSeconds(int bloomFilterRebuildSeconds) {
+        this.bloomFilterRebuildSeconds = bloomFilterRebuildSeconds;
+    }
+
+    public double getBloomFilterFalsePositiveProbability() {
+        return bloomFilterFalsePositiveProbability;
+    }
+
+    public void setBloomFilterFalsePositiveProbability(double bloomFilterFalsePositiveProbability) {
+        this.bloomFilterFalsePositiveProbability = bloomFilterFalsePositiveProbability;
+    }
+}
@@ -0,0 +1,35 @@
+package org.mskcc.cbio.oncokb.config.application;
+
+/**
+ * Settings of the local cache kept in front of the Redis caches when application.redis.enabled is true.
+ */
+public class NearCacheProperties {
+    private boolean enabled = true;
+    // Local entries are also invalidated through Redis pub/sub, the ttl only bounds staleness if a message is missed
+    private int timeToLiveSeconds = 5;
+    private long maxEntries = 10000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getTimeToLiveSeconds() {
+        return timeToLiveSeconds;
+    }
+
+    public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+        this.timeToLiveSeconds = timeToLiveSeconds;
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(long maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+}
@@ -0,0 +1,73 @@
+package org.mskcc.cbio.oncokb.config.application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Settings of the cache of the GET responses proxied from oncokb core.
+ */
+public class ProxyCacheProperties {
+    private boolean enabled = false;
+    // Prefixes of the routes whose responses are cached. They must not depend on the user.
+    private List<String> routes = new ArrayList<>(Arrays.asList(
+        "/api/v1/info",
+        "/api/v1/levels",
+        "/api/v1/utils/allCuratedGenes",
+        "/api/v1/utils/cancerGeneList"
+    ));
+    private int timeToLiveSeconds = 600;
+    private long maxSizeBytes = 64 * 1024 * 1024;
+    // Larger responses are proxied but not cached
+    private long maxEntryBytes = 4 * 1024 * 1024;
+    // The cache is cleared when the data version of oncokb core changes
+    private int dataVersionCheckSeconds = 60;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<String> getRoutes() {
+        return routes;
+    }
+
+    public void setRoutes(List<String> routes) {
+        this.routes = routes;
+    }
+
+    public int getTimeToLiveSeconds() {
+        return timeToLiveSeconds;
+    }
+
+    public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+        this.timeToLiveSeconds = timeToLiveSeconds;
+    }
+
+    public long getMaxSizeBytes() {
+        return maxSizeBytes;
+    }
+
+    public void setMaxSizeBytes(long maxSizeBytes) {
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    public long getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    public void setMaxEntryBytes(long maxEntryBytes) {
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    public int getDataVersionCheckSeconds() {
+        return dataVersionCheckSeconds;
+    }
+
+    public void setDataVersionCheckSeconds(int dataVersionCheckSeconds) {
+        this.dataVersionCheckSeconds = dataVersionCheckSeconds;
+    }
+}
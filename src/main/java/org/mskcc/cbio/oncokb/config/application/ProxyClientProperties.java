@@ -0,0 +1,75 @@
+package org.mskcc.cbio.oncokb.config.application;
+
+/**
+ * Connection pool settings of the http clients used to proxy requests to oncokb core.
+ * Each upstream (api-proxy-url and api-proxy-germline-url) gets its own pool with these settings.
+ */
+public class ProxyClientProperties {
+    private int maxTotalConnections = 200;
+    // Raised to the threads of the asynchronous proxy when it is enabled
+    private int maxConnectionsPerRoute = 200;
+    // All timeouts are in milliseconds
+    private int connectTimeout = 5000;
+    private int connectionRequestTimeout = 5000;
+    // 0 waits as long as oncokb core takes to respond, like the proxy did before it was pooled
+    private int readTimeout = 0;
+    private int validateAfterInactivity = 2000;
+    // Connections idle for longer than this will be closed by the background evictor
+    private int idleEvictionSeconds = 30;
+
+    public int getMaxTotalConnections() {
+        return maxTotalConnections;
+    }
+
+    public void setMaxTotalConnections(int maxTotalConnections) {
+        this.maxTotalConnections = maxTotalConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+        this.connectionRequestTimeout = connectionRequestTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public int getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    public void setValidateAfterInactivity(int validateAfterInactivity) {
+        this.validateAfterInactivity = validateAfterInactivity;
+    }
+
+    public int getIdleEvictionSeconds() {
+        return idleEvictionSeconds;
+    }
+
+    public void setIdleEvictionSeconds(int idleEvictionSeconds) {
+        this.idleEvictionSeconds = idleEvictionSeconds;
+    }
+}
@@ -0,0 +1,92 @@
+package org.mskcc.cbio.oncokb.config.application;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings of the rate limit buckets.
+ */
+public class RateLimitProperties {
+    // Estimated memory the local buckets may use when Redis is not available. Beyond it buckets are evicted whether they
+    // are full or not, which resets the limit of their clients, so it should hold every bucket active within the idle time.
+    private long localBucketsMaxMemoryBytes = 16 * 1024 * 1024;
+    // Buckets idle for longer expire, it is raised to the time needed to refill a bucket so only full buckets expire
+    private int localBucketsIdleSeconds = 60;
+    // Rate limit the requests proxied to oncokb core per token
+    private boolean proxyEnabled = false;
+    // Bandwidth per tier. The tier is the license type of the user, SERVICE_ACCOUNT, PUBLIC_WEBSITE or DEFAULT.
+    // Tiers without a bandwidth fall back to DEFAULT, and requests are not limited when DEFAULT is not set.
+    private Map<String, BandwidthProperties> proxyTiers = new HashMap<>();
+    // How the buckets stored in Redis are synchronized, see RedisSyncMode
+    private RedisSyncMode redisSync = RedisSyncMode.NONE;
+    // Bound of the tokens each pod may grant locally before synchronizing, which is also the overshoot per pod
+    private long redisSyncMaxUnsynchronizedTokens = 10;
+    private long redisSyncMaxUnsynchronizedMillis = 500;
+
+    public enum RedisSyncMode {
+        // Every consumption is a Redis round trip
+        NONE,
+        // Concurrent consumptions of a bucket on the same pod are combined into one Redis request
+        BATCHING,
+        // Tokens are granted from a local copy and the consumption is synchronized in batches
+        DELAYING,
+        // Like DELAYING, also predicting the consumption of the other pods between synchronizations
+        PREDICTING
+    }
+
+    public long getLocalBucketsMaxMemoryBytes() {
+        return localBucketsMaxMemoryBytes;
+    }
+
+    public void setLocalBucketsMaxMemoryBytes(long localBucketsMaxMemoryBytes) {
+        this.localBucketsMaxMemoryBytes = localBucketsMaxMemoryBytes;
+    }
+
+    public int getLocalBucketsIdleSeconds() {
+        return localBucketsIdleSeconds;
+    }
+
+    public void setLocalBucketsIdleSeconds(int localBucketsIdleSeconds) {
+        this.localBucketsIdleSeconds = localBucketsIdleSeconds;
+    }
+
+    public boolean isProxyEnabled() {
+        return proxyEnabled;
+    }
+
+    public void setProxyEnabled(boolean proxyEnabled) {
+        this.proxyEnabled = proxyEnabled;
+    }
+
+    public Map<String, BandwidthProperties> getProxyTiers() {
+        return proxyTiers;
+    }
+
+    public void setProxyTiers(Map<String, BandwidthProperties> proxyTiers) {
+        this.proxyTiers = proxyTiers;
+    }
+
+    public RedisSyncMode getRedisSync() {
+        return redisSync;
+    }
+
+    public void setRedisSync(RedisSyncMode redisSync) {
+        this.redisSync = redisSync;
+    }
+
+    public long getRedisSyncMaxUnsynchronizedTokens() {
+        return redisSyncMaxUnsynchronizedTokens;
+    }
+
+    public void setRedisSyncMaxUnsynchronizedTokens(long redisSyncMaxUnsynchronizedTokens) {
+        this.redisSyncMaxUnsynchronizedTokens = redisSyncMaxUnsynchronizedTokens;
+    }
+
+    public long getRedisSyncMaxUnsynchronizedMillis() {
+        return redisSyncMaxUnsynchronizedMillis;
+    }
+
+    public void setRedisSyncMaxUnsynchronizedMillis(long redisSyncMaxUnsynchronizedMillis) {
+        this.redisSyncMaxUnsynchronizedMillis = redisSyncMaxUnsynchronizedMillis;
+    }
+}
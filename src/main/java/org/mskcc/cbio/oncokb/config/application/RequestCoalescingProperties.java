@@ -0,0 +1,43 @@
+package org.mskcc.cbio.oncokb.config.application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Settings of the coalescing of identical concurrent GET requests proxied to oncokb core.
+ */
+public class RequestCoalescingProperties {
+    private boolean enabled = false;
+    // Prefixes of the routes whose identical concurrent requests share one upstream call. They must not depend on the user.
+    private List<String> routes = new ArrayList<>(Arrays.asList(
+        "/api/v1/genes/lookup",
+        "/api/v1/variants/lookup"
+    ));
+    // A request waiting longer for the shared call is sent upstream on its own
+    private long waitTimeoutMillis = 10000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<String> getRoutes() {
+        return routes;
+    }
+
+    public void setRoutes(List<String> routes) {
+        this.routes = routes;
+    }
+
+    public long getWaitTimeoutMillis() {
+        return waitTimeoutMillis;
+    }
+
+    public void setWaitTimeoutMillis(long waitTimeoutMillis) {
+        this.waitTimeoutMillis = waitTimeoutMillis;
+    }
+}
@@ -0,0 +1,108 @@
+package org.mskcc.cbio.oncokb.config.application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Settings protecting the proxy when oncokb core slows down or fails.
+ */
+public class ResilienceProperties {
+    // The circuit of an upstream opens when the failure rate of its last calls reaches the threshold
+    private boolean circuitBreakerEnabled = false;
+    private int failureRateThreshold = 50;
+    private int slidingWindowSize = 50;
+    private int minimumCalls = 20;
+    // An open circuit lets a single trial call through after this delay
+    private int openSeconds = 30;
+    // Concurrent /api/private/utils/data/** downloads, so they cannot starve the annotation calls
+    private int dataDownloadMaxConcurrent = 4;
+    // Send a second request when an idempotent GET takes longer than the p95 latency of its upstream
+    private boolean hedgingEnabled = false;
+    private List<String> hedgingRoutes = new ArrayList<>(Arrays.asList(
+        "/api/v1/genes/lookup",
+        "/api/v1/variants/lookup"
+    ));
+    private long hedgingMinDelayMillis = 50;
+    private int hedgingThreads = 50;
+
+    public boolean isCircuitBreakerEnabled() {
+        return circuitBreakerEnabled;
+    }
+
+    public void setCircuitBreakerEnabled(boolean circuitBreakerEnabled) {
+        this.circuitBreakerEnabled = circuitBreakerEnabled;
+    }
+
+    public int getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public void setFailureRateThreshold(int failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    public void setSlidingWindowSize(int slidingWindowSize) {
+        this.slidingWindowSize = slidingWindowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+
+    public int getOpenSeconds() {
+        return openSeconds;
+    }
+
+    public void setOpenSeconds(int openSeconds) {
+        this.openSeconds = openSeconds;
+    }
+
+    public int getDataDownloadMaxConcurrent() {
+        return dataDownloadMaxConcurrent;
+    }
+
+    public void setDataDownloadMaxConcurrent(int dataDownloadMaxConcurrent) {
+        this.dataDownloadMaxConcurrent = dataDownloadMaxConcurrent;
+    }
+
+    public boolean isHedgingEnabled() {
+        return hedgingEnabled;
+    }
+
+    public void setHedgingEnabled(boolean hedgingEnabled) {
+        this.hedgingEnabled = hedgingEnabled;
+    }
+
+    public List<String> getHedgingRoutes() {
+        return hedgingRoutes;
+    }
+
+    public void setHedgingRoutes(List<String> hedgingRoutes) {
+        this.hedgingRoutes = hedgingRoutes;
+    }
+
+    public long getHedgingMinDelayMillis() {
+        return hedgingMinDelayMillis;
+    }
+
+    public void setHedgingMinDelayMillis(long hedgingMinDelayMillis) {
+        this.hedgingMinDelayMillis = hedgingMinDelayMillis;
+    }
+
+    public int getHedgingThreads() {
+        return hedgingThreads;
+    }
+
+    public void setHedgingThreads(int hedgingThreads) {
+        this.hedgingThreads = hedgingThreads;
+    }
+}
@@ -0,0 +1,45 @@
+package org.mskcc.cbio.oncokb.config.application;
+
+/**
+ * Settings of the background writer that persists token usage.
+ */
+public class TokenStatsProperties {
+    // Usage is summed per token, resource, ip and aggregation window before it is persisted
+    private int aggregationWindowSeconds = 60;
+    // Usage of new buckets exceeding the limit is dropped, the request is never blocked
+    private int maxBuckets = 100000;
+    private int batchSize = 500;
+    private long flushIntervalMillis = 10000;
+
+    public int getAggregationWindowSeconds() {
+        return aggregationWindowSeconds;
+    }
+
+    public void setAggregationWindowSeconds(int aggregationWindowSeconds) {
+        this.aggregationWindowSeconds = aggregationWindowSeconds;
+    }
+
+    public int getMaxBuckets() {
+        return maxBuckets;
+    }
+
+    public void setMaxBuckets(int maxBuckets) {
+        this.maxBuckets = maxBuckets;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+}
@@ -0,0 +1,37 @@
+package org.mskcc.cbio.oncokb.config.application;
+
+/**
+ * Settings of the in-memory copies of the usage summaries stored on S3.
+ */
+public class UsageSummaryCacheProperties {
+    // The summaries of the current month and year are revalidated against their S3 ETag at this interval
+    private int refreshSeconds = 300;
+    // The summaries that do not exist on S3 are looked up again after this time
+    private int missingTimeToLiveSeconds = 3600;
+    // Summaries downloaded and parsed concurrently
+    private int loaderThreads = 8;
+
+    public int getRefreshSeconds() {
+        return refreshSeconds;
+    }
+
+    public void setRefreshSeconds(int refreshSeconds) {
+        this.refreshSeconds = refreshSeconds;
+    }
+
+    public int getMissingTimeToLiveSeconds() {
+        return missingTimeToLiveSeconds;
+    }
+
+    public void setMissingTimeToLiveSeconds(int missingTimeToLiveSeconds) {
+        this.missingTimeToLiveSeconds = missingTimeToLiveSeconds;
+    }
+
+    public int getLoaderThreads() {
+        return loaderThreads;
+    }
+
+    public void setLoaderThreads(int loaderThreads) {
+        this.loaderThreads = loaderThreads;
+    }
+}
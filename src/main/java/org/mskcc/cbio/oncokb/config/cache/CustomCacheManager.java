@@ -3,18 +3,37 @@ package org.mskcc.cbio.oncokb.config.cache;
 import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
-import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.caffeine.CaffeineCache;
 
 /**
  * This cache manager is used when Redis caching is disabled.
+ * <p>
+ * Every cache is a bounded Caffeine cache (W-TinyLFU eviction) whose entries expire after the
+ * {@code jhipster.cache.caffeine.time-to-live-seconds}. Hit, miss and eviction stats are exported to Micrometer.
  */
 public class CustomCacheManager implements CacheManager{
 
     private final ConcurrentMap<String, Cache> cacheMap = new ConcurrentHashMap<>();
 
+    private final long maxEntries;
+
+    private final long timeToLiveSeconds;
+
+    private final MeterRegistry meterRegistry;
+
+    public CustomCacheManager(long maxEntries, long timeToLiveSeconds, MeterRegistry meterRegistry) {
+        this.maxEntries = maxEntries;
+        this.timeToLiveSeconds = timeToLiveSeconds;
+        this.meterRegistry = meterRegistry;
+    }
+
     /**
 	 * Get a collection of the cache names known by this manager.
 	 * @return the names of all caches known by the cache manager
@@ -27,25 +46,23 @@ public class CustomCacheManager implements CacheManager{
 
     /**
 	 * Get the cache associated with the given name.
-	 * <p>Note that the cache may be lazily created at runtime if the
-	 * native provider supports it.
+	 * <p>The cache is lazily created the first time it is requested.
 	 * @param name the cache identifier (must not be {@code null})
-	 * @return the associated cache, or {@code null} if such a cache
-	 * does not exist or could be not created
+	 * @return the associated cache
 	 */
     @Override
     public Cache getCache(String name) {
-        Cache cache = this.cacheMap.get(name);
-        if (cache == null){
-            cache = new ConcurrentMapCache(name, new ConcurrentHashMap<>(), true);
-            cacheMap.put(name, cache);
-        }else {
-            // Currently, the cache is returned empty to avoid buildup.
-            // In the future, we want to use in-memory cache with
-            // a time to live on cache entries instead.
-            cache.clear();
-        }
-        return cache;
+        return cacheMap.computeIfAbsent(name, this::createCache);
+    }
+
+    private Cache createCache(String name) {
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = Caffeine.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(timeToLiveSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, nativeCache, name);
+        return new CaffeineCache(name, nativeCache, true);
     }
 
 }
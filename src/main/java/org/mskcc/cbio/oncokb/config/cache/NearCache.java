@@ -0,0 +1,146 @@
+package org.mskcc.cbio.oncokb.config.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.util.SerializationUtils;
+
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+
+/**
+ * A two-tier cache. Reads are served from a small local cache (L1) and fall back to the shared Redis cache (L2).
+ * Puts and evictions are applied to both tiers. The evictions and the puts replacing a value are broadcast to the other
+ * pods by the {@link NearCacheManager} so they drop their local copy.
+ * <p>
+ * The cached values, like the JPA entities, are mutable. The local tier keeps them serialized and every read gets its
+ * own copy, as it would from Redis. Values which are not serializable are only kept in Redis.
+ */
+public class NearCache implements Cache {
+
+    private final Cache delegate;
+
+    private final com.github.benmanes.caffeine.cache.Cache<Object, ValueWrapper> localCache;
+
+    private final NearCacheManager nearCacheManager;
+
+    NearCache(Cache delegate, com.github.benmanes.caffeine.cache.Cache<Object, ValueWrapper> localCache, NearCacheManager nearCacheManager) {
+        this.delegate = delegate;
+        this.localCache = localCache;
+        this.nearCacheManager = nearCacheManager;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper valueWrapper = localCache.getIfPresent(key);
+        if (valueWrapper == null) {
+            valueWrapper = delegate.get(key);
+            if (valueWrapper != null) {
+                putLocal(key, valueWrapper.get());
+            }
+        }
+        return valueWrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper valueWrapper = get(key);
+        Object value = valueWrapper == null ? null : valueWrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper valueWrapper = get(key);
+        if (valueWrapper != null) {
+            return (T) valueWrapper.get();
+        }
+        T value = delegate.get(key, valueLoader);
+        putLocal(key, value);
+        return value;
+    }
+
+    /**
+     * The {@code @Cacheable} misses are filled with a put as well. A key missing in Redis was evicted, and the other
+     * pods dropped their local copy then, so only a put replacing a value is broadcast.
+     */
+    @Override
+    public void put(Object key, Object value) {
+        ValueWrapper previousValue = delegate.putIfAbsent(key, value);
+        if (previousValue != null) {
+            delegate.put(key, value);
+        }
+        putLocal(key, value);
+        if (previousValue != null) {
+            // The other pods may have the previous value
+            nearCacheManager.publishInvalidation(getName(), key);
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+        localCache.invalidate(key);
+        nearCacheManager.publishInvalidation(getName(), key);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        localCache.invalidateAll();
+        nearCacheManager.publishInvalidation(getName(), null);
+    }
+
+    private void putLocal(Object key, Object value) {
+        if (value == null) {
+            localCache.put(key, new SimpleValueWrapper(null));
+        } else if (value instanceof Serializable) {
+            try {
+                localCache.put(key, new SerializedValueWrapper(SerializationUtils.serialize(value)));
+            } catch (IllegalArgumentException e) {
+                // A field of the value is not serializable
+                localCache.invalidate(key);
+            }
+        } else {
+            localCache.invalidate(key);
+        }
+    }
+
+    void invalidateLocal(Object key) {
+        if (key == null) {
+            localCache.invalidateAll();
+        } else {
+            localCache.invalidate(key);
+        }
+    }
+
+    /**
+     * Deserializes a new copy of the value on every read.
+     */
+    private static class SerializedValueWrapper implements ValueWrapper {
+        private final byte[] serializedValue;
+
+        SerializedValueWrapper(byte[] serializedValue) {
+            this.serializedValue = serializedValue;
+        }
+
+        @Override
+        public Object get() {
+            return SerializationUtils.deserialize(serializedValue);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.mskcc.cbio.oncokb.config.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.mskcc.cbio.oncokb.config.application.NearCacheProperties;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps the Redis cache manager so every cache gets a local near cache in front of it.
+ * <p>
+ * Evictions and the puts replacing a value are published on a Redis topic, and every other pod drops the key from its
+ * local tier when it receives the message. The short local ttl bounds staleness in case a message is missed.
+ */
+public class NearCacheManager implements CacheManager {
+    private static final String INVALIDATION_TOPIC = "near-cache-invalidation";
+
+    private final Logger log = LoggerFactory.getLogger(NearCacheManager.class);
+
+    private final CacheManager delegate;
+
+    private final NearCacheProperties properties;
+
+    private final RTopic invalidationTopic;
+
+    // Used to ignore the invalidation messages published by this pod
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final ConcurrentMap<String, NearCache> cacheMap = new ConcurrentHashMap<>();
+
+    public NearCacheManager(CacheManager delegate, NearCacheProperties properties, RedissonClient redissonClient, CacheNameResolver cacheNameResolver) {
+        this.delegate = delegate;
+        this.properties = properties;
+        this.invalidationTopic = redissonClient.getTopic(cacheNameResolver.getCacheName(INVALIDATION_TOPIC));
+        this.invalidationTopic.addListener(CacheInvalidation.class, (channel, invalidation) -> {
+            if (!instanceId.equals(invalidation.getInstanceId())) {
+                NearCache cache = cacheMap.get(invalidation.getCacheName());
+                if (cache != null) {
+                    cache.invalidateLocal(invalidation.getKey());
+                }
+            }
+        });
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        NearCache cache = cacheMap.get(name);
+        if (cache == null) {
+            Cache redisCache = delegate.getCache(name);
+            if (redisCache == null) {
+                return null;
+            }
+            cache = cacheMap.computeIfAbsent(name, key -> new NearCache(
+                redisCache,
+                Caffeine.newBuilder()
+                    .maximumSize(properties.getMaxEntries())
+                    .expireAfterWrite(properties.getTimeToLiveSeconds(), TimeUnit.SECONDS)
+                    .build(),
+                this
+            ));
+        }
+        return cache;
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+
+    void publishInvalidation(String cacheName, Object key) {
+        try {
+            invalidationTopic.publish(new CacheInvalidation(instanceId, cacheName, key));
+        } catch (RuntimeException e) {
+            log.error("Failed to publish the invalidation of '{}' in cache '{}'", key, cacheName, e);
+        }
+    }
+
+    /**
+     * Message broadcast to the other pods when a key is replaced or evicted. A null key means the whole cache is cleared.
+     */
+    public static class CacheInvalidation implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String instanceId;
+        private String cacheName;
+        private Object key;
+
+        public CacheInvalidation() {
+        }
+
+        public CacheInvalidation(String instanceId, String cacheName, Object key) {
+            this.instanceId = instanceId;
+            this.cacheName = cacheName;
+            this.key = key;
+        }
+
+        public String getInstanceId() {
+            return instanceId;
+        }
+
+        public String getCacheName() {
+            return cacheName;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.mskcc.cbio.oncokb.config.cache;
+
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.cache.CacheManager;
+
+/**
+ * Wraps the Redis backed {@link CacheManager} created by Spring Boot with a {@link NearCacheManager}, so the cache
+ * resolvers and the services evicting caches all go through the near cache.
+ */
+public class NearCacheManagerPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<ApplicationProperties> applicationProperties;
+
+    private final ObjectProvider<RedissonClient> redissonClient;
+
+    private final ObjectProvider<CacheNameResolver> cacheNameResolver;
+
+    public NearCacheManagerPostProcessor(ObjectProvider<ApplicationProperties> applicationProperties, ObjectProvider<RedissonClient> redissonClient, ObjectProvider<CacheNameResolver> cacheNameResolver) {
+        this.applicationProperties = applicationProperties;
+        this.redissonClient = redissonClient;
+        this.cacheNameResolver = cacheNameResolver;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof CacheManager && !(bean instanceof NearCacheManager) && applicationProperties.getObject().getNearCache().isEnabled()) {
+            return new NearCacheManager((CacheManager) bean, applicationProperties.getObject().getNearCache(), redissonClient.getObject(), cacheNameResolver.getObject());
+        }
+        return bean;
+    }
+}
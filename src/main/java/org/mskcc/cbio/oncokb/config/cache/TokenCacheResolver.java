@@ -12,6 +12,7 @@ import java.util.Collection;
 public class TokenCacheResolver implements CacheResolver {
     public static String TOKEN_BY_UUID_CACHE = "tokenByUuid";
     public static String TOKENS_BY_USER_LOGIN_CACHE = "tokensByUserLogin";
+    public static String TOKEN_PRINCIPAL_BY_UUID_CACHE = "tokenPrincipalByUuid";
 
 
     private final ApplicationProperties applicationProperties;
@@ -13,6 +13,7 @@ public class UserCacheResolver implements CacheResolver {
     public static String USERS_BY_LOGIN_CACHE = "usersByLogin";
     public static String USERS_BY_EMAIL_CACHE = "usersByEmail";
     public static String ALL_USERS_CACHE = "allUsers";
+    public static String RATE_LIMIT_TIER_BY_LOGIN_CACHE = "rateLimitTierByLogin";
 
 
     private final ApplicationProperties applicationProperties;
@@ -14,8 +14,8 @@ import java.time.Instant;
 
 @Component
 public class RateLimitInterceptor implements HandlerInterceptor {
-    private static final String RATE_LIMIT_REMAINING_HEADER = "x-ratelimit-remaining";
-    private static final String RATE_LIMIT_RESET_HEADER = "x-ratelimit-reset";
+    public static final String RATE_LIMIT_REMAINING_HEADER = "x-ratelimit-remaining";
+    public static final String RATE_LIMIT_RESET_HEADER = "x-ratelimit-reset";
 
     private RateLimitService rateLimitService;
 
@@ -11,6 +11,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.time.Instant;
@@ -48,4 +49,7 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     @Query("select user, userDetails from User as user left join UserDetails as userDetails on user.id = userDetails.user WHERE user in ?1")
     List<Object[]> findAllUsersWithUserDetailsByUsersIn(List<User> users);
+
+    @Query("select user.id, user.email, company.id from User as user left join UserDetails as userDetails on user.id = userDetails.user left join userDetails.company as company WHERE lower(user.email) in ?1")
+    List<Object[]> findAllIdsAndCompanyIdsByLowerCaseEmailIn(Collection<String> emails);
 }
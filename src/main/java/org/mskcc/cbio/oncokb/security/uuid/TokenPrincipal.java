@@ -0,0 +1,76 @@
+package org.mskcc.cbio.oncokb.security.uuid;
+
+import org.mskcc.cbio.oncokb.domain.Authority;
+import org.mskcc.cbio.oncokb.domain.Token;
+import org.mskcc.cbio.oncokb.domain.User;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable snapshot of everything needed to authenticate a request with a token.
+ * It is cached by token uuid, so it has to be evicted whenever the token or its user changes.
+ */
+public final class TokenPrincipal implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final UUID token;
+    private final String login;
+    private final List<String> authorities;
+    private final Instant expiration;
+    private final Integer usageLimit;
+    private final int currentUsage;
+
+    public TokenPrincipal(Token token, User user) {
+        this.token = token.getToken();
+        this.login = user.getLogin();
+        this.authorities = Collections.unmodifiableList(user.getAuthorities().stream().map(Authority::getName).collect(Collectors.toList()));
+        this.expiration = token.getExpiration();
+        this.usageLimit = token.getUsageLimit();
+        this.currentUsage = token.getCurrentUsage() == null ? 0 : token.getCurrentUsage();
+    }
+
+    public UUID getToken() {
+        return token;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public List<String> getAuthorities() {
+        return authorities;
+    }
+
+    public Instant getExpiration() {
+        return expiration;
+    }
+
+    public Integer getUsageLimit() {
+        return usageLimit;
+    }
+
+    public int getCurrentUsage() {
+        return currentUsage;
+    }
+
+    public boolean isValid(Instant now) {
+        return expiration.isAfter(now) && (usageLimit == null || currentUsage < usageLimit);
+    }
+
+    public Authentication toAuthentication() {
+        return new UsernamePasswordAuthenticationToken(
+            login,
+            token,
+            authorities.stream().map(SimpleGrantedAuthority::new).collect(Collectors.toList())
+        );
+    }
+}
@@ -1,5 +1,6 @@
 package org.mskcc.cbio.oncokb.security.uuid;
 
+import org.mskcc.cbio.oncokb.config.cache.CacheNameResolver;
 import org.mskcc.cbio.oncokb.domain.Authority;
 import org.mskcc.cbio.oncokb.domain.Token;
 import org.mskcc.cbio.oncokb.domain.User;
@@ -10,17 +11,16 @@ import org.mskcc.cbio.oncokb.service.TokenService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static org.mskcc.cbio.oncokb.config.Constants.*;
+import static org.mskcc.cbio.oncokb.config.cache.TokenCacheResolver.TOKEN_PRINCIPAL_BY_UUID_CACHE;
 
 @Component("tokenProvider")
 public class TokenProvider implements InitializingBean {
@@ -37,9 +37,18 @@ public class TokenProvider implements InitializingBean {
 
     private TokenService tokenService;
 
-    public TokenProvider(UserRepository userRepository, TokenService tokenService) {
+    private CacheManager cacheManager;
+
+    private CacheNameResolver cacheNameResolver;
+
+    private UnknownTokenFilter unknownTokenFilter;
+
+    public TokenProvider(UserRepository userRepository, TokenService tokenService, CacheManager cacheManager, CacheNameResolver cacheNameResolver, UnknownTokenFilter unknownTokenFilter) {
         this.userRepository = userRepository;
         this.tokenService = tokenService;
+        this.cacheManager = cacheManager;
+        this.cacheNameResolver = cacheNameResolver;
+        this.unknownTokenFilter = unknownTokenFilter;
     }
 
     @Override
@@ -131,33 +140,54 @@ public class TokenProvider implements InitializingBean {
         return null;
     }
 
-    public Authentication getAuthentication(UUID token) {
-        Optional<Token> tokenOptional = tokenService.findByToken(token);
-
-        Optional<User> user = userRepository.findOneWithAuthoritiesByLogin(tokenOptional.get().getUser().getLogin());
-        Collection<? extends GrantedAuthority> authorities =
-            user.get().getAuthorities().stream()
-                .map(authority -> new SimpleGrantedAuthority(authority.getName()))
-                .collect(Collectors.toList());
+    /**
+     * Resolve the authentication of a token with a single lookup. The {@link TokenPrincipal} is cached by uuid,
+     * so in steady state this does not hit the database.
+     *
+     * @param tokenValue the uuid sent by the client
+     * @return the authentication if the token is valid, empty otherwise
+     */
+    public Optional<Authentication> resolveAuthentication(UUID tokenValue) {
+        return getPrincipal(tokenValue)
+            .filter(principal -> principal.isValid(Instant.now()))
+            .map(TokenPrincipal::toAuthentication);
+    }
 
-        return new UsernamePasswordAuthenticationToken(user.get().getLogin(), token, authorities);
+    public Authentication getAuthentication(UUID token) {
+        return getPrincipal(token).map(TokenPrincipal::toAuthentication).orElse(null);
     }
 
     public boolean validateToken(UUID tokenValue) {
+        return getPrincipal(tokenValue).map(principal -> principal.isValid(Instant.now())).orElse(false);
+    }
+
+    private Optional<TokenPrincipal> getPrincipal(UUID tokenValue) {
+        if (unknownTokenFilter.isKnownInvalid(tokenValue)) {
+            return Optional.empty();
+        }
         try {
-            Optional<Token> token = tokenService.findByToken(tokenValue);
-            if (token.isPresent() && token.get().getExpiration().isAfter(Instant.now())) {
-                if(token.get().getUsageLimit() == null || token.get().getCurrentUsage() < token.get().getUsageLimit()) {
-                    return true;
-                }else{
-                    return false;
+            Cache cache = cacheManager.getCache(cacheNameResolver.getCacheName(TOKEN_PRINCIPAL_BY_UUID_CACHE));
+            TokenPrincipal principal = cache == null ? null : cache.get(tokenValue, TokenPrincipal.class);
+            if (principal == null) {
+                Optional<Token> token = tokenService.findByToken(tokenValue);
+                if (!token.isPresent()) {
+                    unknownTokenFilter.markInvalid(tokenValue);
+                    return Optional.empty();
+                }
+                Optional<User> user = userRepository.findOneWithAuthoritiesByLogin(token.get().getUser().getLogin());
+                if (!user.isPresent()) {
+                    return Optional.empty();
+                }
+                principal = new TokenPrincipal(token.get(), user.get());
+                if (cache != null) {
+                    cache.put(tokenValue, principal);
                 }
             }
-            return false;
+            return Optional.of(principal);
         } catch (Exception e) {
             log.info("The token is invalid.");
             log.trace("UUID token compact of handler are invalid trace: {}", e);
         }
-        return false;
+        return Optional.empty();
     }
 }
@@ -0,0 +1,135 @@
+package org.mskcc.cbio.oncokb.security.uuid;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.application.InvalidTokenCacheProperties;
+import org.mskcc.cbio.oncokb.repository.TokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rejects the uuids that are known not to belong to any token, so clients retrying with a revoked or mistyped token
+ * do not cause a database lookup per request.
+ * <p>
+ * Unknown uuids are remembered in a short lived local negative cache. Optionally, a bloom filter of all the live
+ * tokens is rebuilt periodically, then uuids it definitely does not contain are rejected without any lookup.
+ * Tokens saved on this pod are added to the bloom filter and removed from the negative cache right away.
+ */
+@Component
+public class UnknownTokenFilter implements DisposableBean {
+
+    private final Logger log = LoggerFactory.getLogger(UnknownTokenFilter.class);
+
+    private final TokenRepository tokenRepository;
+
+    private final InvalidTokenCacheProperties properties;
+
+    private final Cache<UUID, Boolean> negativeCache;
+
+    private final Counter negativeCacheRejections;
+
+    private final Counter bloomFilterRejections;
+
+    private final ScheduledExecutorService rebuilder;
+
+    private volatile UuidBloomFilter bloomFilter;
+
+    // The tokens saved recently may not be visible yet to the query rebuilding the bloom filter
+    private final ConcurrentMap<UUID, Long> recentlySavedTokens = new ConcurrentHashMap<>();
+
+    public UnknownTokenFilter(TokenRepository tokenRepository, ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.tokenRepository = tokenRepository;
+        this.properties = applicationProperties.getInvalidTokenCache();
+        this.negativeCache = Caffeine.newBuilder()
+            .maximumSize(properties.getMaxEntries())
+            .expireAfterWrite(properties.getTimeToLiveSeconds(), TimeUnit.SECONDS)
+            .build();
+        meterRegistry.gauge("oncokb.token.negative.cache.size", negativeCache, cache -> cache.estimatedSize());
+        this.negativeCacheRejections = meterRegistry.counter("oncokb.token.rejections", "reason", "negative-cache");
+        this.bloomFilterRejections = meterRegistry.counter("oncokb.token.rejections", "reason", "bloom-filter");
+
+        if (properties.isBloomFilterEnabled()) {
+            this.rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "oncokb-token-bloom-filter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.rebuilder.scheduleWithFixedDelay(this::rebuildSafely, 0, properties.getBloomFilterRebuildSeconds(), TimeUnit.SECONDS);
+        } else {
+            this.rebuilder = null;
+        }
+    }
+
+    /**
+     * @param uuid the uuid sent by the client
+     * @return true if the uuid is known not to belong to a live token, false if it has to be looked up
+     */
+    public boolean isKnownInvalid(UUID uuid) {
+        if (negativeCache.getIfPresent(uuid) != null) {
+            negativeCacheRejections.increment();
+            return true;
+        }
+        UuidBloomFilter filter = bloomFilter;
+        if (filter != null && !filter.mightContain(uuid)) {
+            bloomFilterRejections.increment();
+            return true;
+        }
+        return false;
+    }
+
+    public void markInvalid(UUID uuid) {
+        negativeCache.put(uuid, Boolean.TRUE);
+    }
+
+    public void tokenSaved(UUID uuid) {
+        negativeCache.invalidate(uuid);
+        if (rebuilder == null) {
+            return;
+        }
+        recentlySavedTokens.put(uuid, System.currentTimeMillis());
+        UuidBloomFilter filter = bloomFilter;
+        if (filter != null) {
+            filter.put(uuid);
+        }
+    }
+
+    private void rebuildSafely() {
+        try {
+            long start = System.currentTimeMillis();
+            UuidBloomFilter filter = UuidBloomFilter.create(
+                tokenRepository.findAllTokenUuidsExpireAfterDate(Instant.now()),
+                properties.getBloomFilterFalsePositiveProbability()
+            );
+            recentlySavedTokens.keySet().forEach(filter::put);
+            bloomFilter = filter;
+            // Tokens saved while the filter was swapped
+            recentlySavedTokens.keySet().forEach(filter::put);
+            long expiredBefore = start - TimeUnit.SECONDS.toMillis(properties.getBloomFilterRebuildSeconds());
+            recentlySavedTokens.values().removeIf(savedAt -> savedAt < expiredBefore);
+        } catch (Exception e) {
+            // Without an up to date filter every uuid has to be looked up
+            bloomFilter = null;
+            log.error("Failed to rebuild the token bloom filter", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (rebuilder != null) {
+            rebuilder.shutdownNow();
+        }
+    }
+}
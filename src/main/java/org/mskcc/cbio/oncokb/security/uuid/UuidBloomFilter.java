@@ -0,0 +1,72 @@
+package org.mskcc.cbio.oncokb.security.uuid;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bloom filter of token uuids.
+ * <p>
+ * Tokens are random uuids, so the two halves of the uuid are used directly as the two hashes of the double hashing
+ * scheme. {@link #put(UUID)} is thread safe, so tokens created after the filter is built can be added to it.
+ */
+public final class UuidBloomFilter {
+    // Leave room for the tokens created before the next rebuild
+    private static final int MIN_EXPECTED_INSERTIONS = 1024;
+
+    private final AtomicLongArray bits;
+    private final long numBits;
+    private final int numHashFunctions;
+
+    private UuidBloomFilter(long numBits, int numHashFunctions) {
+        this.bits = new AtomicLongArray((int) ((numBits + 63) / 64));
+        this.numBits = (long) bits.length() * 64;
+        this.numHashFunctions = numHashFunctions;
+    }
+
+    public static UuidBloomFilter create(Collection<UUID> uuids, double falsePositiveProbability) {
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("The false positive probability must be between 0 and 1");
+        }
+        long expectedInsertions = Math.max(MIN_EXPECTED_INSERTIONS, uuids.size() * 2L);
+        long numBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        int numHashFunctions = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+        UuidBloomFilter filter = new UuidBloomFilter(numBits, numHashFunctions);
+        for (UUID uuid : uuids) {
+            filter.put(uuid);
+        }
+        return filter;
+    }
+
+    public void put(UUID uuid) {
+        long hash1 = uuid.getMostSignificantBits();
+        long hash2 = uuid.getLeastSignificantBits();
+        for (int i = 0; i < numHashFunctions; i++) {
+            long index = Math.floorMod(hash1 + i * hash2, numBits);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * @return false if the uuid has definitely not been added, true if it might have been
+     */
+    public boolean mightContain(UUID uuid) {
+        long hash1 = uuid.getMostSignificantBits();
+        long hash2 = uuid.getLeastSignificantBits();
+        for (int i = 0; i < numHashFunctions; i++) {
+            long index = Math.floorMod(hash1 + i * hash2, numBits);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
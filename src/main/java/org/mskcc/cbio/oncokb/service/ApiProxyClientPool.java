@@ -0,0 +1,139 @@
+package org.mskcc.cbio.oncokb.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.application.ProxyClientProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one pooled http client per oncokb core upstream, so the proxy reuses keep-alive connections
+ * instead of opening a new one for every request.
+ */
+@Component
+public class ApiProxyClientPool implements DisposableBean {
+    public static final String DEFAULT_UPSTREAM = "default";
+    public static final String GERMLINE_UPSTREAM = "germline";
+
+    private static final String METRIC_NAME = "oncokb.proxy.client";
+
+    private final Logger log = LoggerFactory.getLogger(ApiProxyClientPool.class);
+
+    private final Upstream defaultUpstream;
+
+    private final Upstream germlineUpstream;
+
+    public ApiProxyClientPool(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        ProxyClientProperties properties = applicationProperties.getProxyClient();
+        int maxConnectionsPerRoute = getMaxConnectionsPerRoute(applicationProperties);
+        this.defaultUpstream = new Upstream(DEFAULT_UPSTREAM, applicationProperties.getApiProxyUrl(), properties, maxConnectionsPerRoute, meterRegistry);
+        if (StringUtils.isNotEmpty(applicationProperties.getApiProxyGermlineUrl())) {
+            this.germlineUpstream = new Upstream(GERMLINE_UPSTREAM, applicationProperties.getApiProxyGermlineUrl(), properties, maxConnectionsPerRoute, meterRegistry);
+        } else {
+            this.germlineUpstream = null;
+        }
+    }
+
+    /**
+     * Each upstream is a single route. Every thread of the asynchronous proxy holds a connection while its request
+     * is executed, the pool never leaves them waiting for one.
+     */
+    static int getMaxConnectionsPerRoute(ApplicationProperties applicationProperties) {
+        int maxConnectionsPerRoute = applicationProperties.getProxyClient().getMaxConnectionsPerRoute();
+        if (applicationProperties.getAsyncProxy().isEnabled()) {
+            maxConnectionsPerRoute = Math.max(maxConnectionsPerRoute, applicationProperties.getAsyncProxy().getThreads());
+        }
+        return maxConnectionsPerRoute;
+    }
+
+    public RestTemplate getRestTemplate(URI uri) {
+        return getUpstream(uri).restTemplate;
+    }
+
+    public CloseableHttpClient getHttpClient(URI uri) {
+        return getUpstream(uri).httpClient;
+    }
+
+    public String getUpstreamName(URI uri) {
+        return getUpstream(uri).name;
+    }
+
+    private Upstream getUpstream(URI uri) {
+        // The germline url is checked first since it could be a sub path of the default url
+        if (germlineUpstream != null && uri.toString().startsWith(germlineUpstream.baseUrl)) {
+            return germlineUpstream;
+        }
+        return defaultUpstream;
+    }
+
+    @Override
+    public void destroy() {
+        defaultUpstream.close();
+        if (germlineUpstream != null) {
+            germlineUpstream.close();
+        }
+    }
+
+    private class Upstream {
+        private final String name;
+        private final String baseUrl;
+        private final PoolingHttpClientConnectionManager connectionManager;
+        private final CloseableHttpClient httpClient;
+        private final RestTemplate restTemplate;
+
+        Upstream(String name, String baseUrl, ProxyClientProperties properties, int maxConnectionsPerRoute, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.baseUrl = StringUtils.defaultString(baseUrl);
+
+            connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(Math.max(properties.getMaxTotalConnections(), maxConnectionsPerRoute));
+            connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+            connectionManager.setValidateAfterInactivity(properties.getValidateAfterInactivity());
+
+            RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(properties.getConnectTimeout())
+                .setConnectionRequestTimeout(properties.getConnectionRequestTimeout())
+                .setSocketTimeout(properties.getReadTimeout())
+                .build();
+
+            httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                // Responses are passed through as they are, including their Content-Encoding
+                .disableContentCompression()
+                .evictExpiredConnections()
+                .evictIdleConnections(properties.getIdleEvictionSeconds(), TimeUnit.SECONDS)
+                .build();
+
+            restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+            restTemplate.getMessageConverters().add(0, new StringHttpMessageConverter(StandardCharsets.UTF_8));
+
+            new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, METRIC_NAME, Tags.of("upstream", name)).bindTo(meterRegistry);
+        }
+
+        void close() {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                log.warn("Failed to close the {} proxy client", name, e);
+            }
+        }
+    }
+}
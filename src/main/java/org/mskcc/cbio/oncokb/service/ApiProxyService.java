@@ -1,6 +1,11 @@
 package org.mskcc.cbio.oncokb.service;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
 import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
 import org.mskcc.cbio.oncokb.security.SecurityUtils;
 import org.slf4j.Logger;
@@ -9,11 +14,30 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.*;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Service for proxying oncokb core requests
@@ -24,9 +48,31 @@ import java.net.URISyntaxException;
 public class ApiProxyService {
     private final Logger log = LoggerFactory.getLogger(ApiProxyService.class);
 
+    private static final int STREAM_BUFFER_SIZE = 8192;
+
+    // Hop-by-hop headers only apply to the connection between us and oncokb core
+    private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<>(Arrays.asList(
+        "connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "te", "trailer", "transfer-encoding", "upgrade"
+    ));
+
     @Autowired
     private ApplicationProperties applicationProperties;
 
+    @Autowired
+    private ApiProxyClientPool apiProxyClientPool;
+
+    @Autowired
+    private ProxyResponseCache proxyResponseCache;
+
+    @Autowired
+    private ProxyRequestCoalescer proxyRequestCoalescer;
+
+    @Autowired
+    private UpstreamResilience upstreamResilience;
+
+    @Autowired
+    private DataReleaseSpool dataReleaseSpool;
+
     public URI prepareURI(HttpServletRequest request) throws URISyntaxException {
         String queryString = request.getQueryString();
         String defaultApiProxyUrl = applicationProperties.getApiProxyUrl();
@@ -56,7 +102,445 @@ public class ApiProxyService {
         URI uri = prepareURI(apiRequest);
 
         HttpHeaders httpHeaders = prepareHttpHeaders(contentType);
-        RestTemplate restTemplate = new RestTemplate();
-        return restTemplate.exchange(uri, method, new HttpEntity<>(body, httpHeaders), String.class);
+        return exchange(uri, method, body, httpHeaders, String.class);
+    }
+
+    public <T> ResponseEntity<T> exchange(URI uri, HttpMethod method, String body, HttpHeaders httpHeaders, Class<T> responseType) {
+        UpstreamResilience.Permit permit = upstreamResilience.acquire(uri);
+        try {
+            ResponseEntity<T> responseEntity = apiProxyClientPool.getRestTemplate(uri).exchange(uri, method, new HttpEntity<>(body, httpHeaders), responseType);
+            permit.complete(true);
+            return responseEntity;
+        } catch (HttpClientErrorException e) {
+            permit.complete(true);
+            throw e;
+        } catch (RuntimeException e) {
+            permit.complete(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Proxy the request to oncokb core. The GET requests of the cached routes are served from the
+     * {@link ProxyResponseCache}, the identical concurrent GET requests of the coalesced routes share one call
+     * through the {@link ProxyRequestCoalescer}, the others are streamed. Data downloads are served from
+     * the {@link DataReleaseSpool} once it has a local copy, and support range requests.
+     */
+    public void proxyExchange(URI uri, HttpMethod method, String body, HttpHeaders httpHeaders, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!upstreamResilience.isDataDownload(request.getRequestURI())) {
+            doProxyExchange(uri, method, body, httpHeaders, request, response);
+            return;
+        }
+        // The local copies do not take a data download slot, they do not use the upstream
+        if (HttpMethod.GET.equals(method)) {
+            Optional<DataReleaseSpool.SpooledFile> spooledFile = dataReleaseSpool.get(uri);
+            if (spooledFile.isPresent() && writeSpooledFile(spooledFile.get(), request, response)) {
+                return;
+            }
+        }
+        upstreamResilience.acquireDataDownload();
+        try {
+            doProxyExchange(uri, method, body, httpHeaders, request, response);
+        } finally {
+            upstreamResilience.releaseDataDownload();
+        }
+    }
+
+    private void doProxyExchange(URI uri, HttpMethod method, String body, HttpHeaders httpHeaders, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (upstreamResilience.isDataDownload(request.getRequestURI())) {
+            // Ranges apply to the uncompressed file, the Accept-Encoding of the client is not forwarded
+            streamDataDownload(uri, method, body, httpHeaders, request, response);
+            return;
+        }
+        writeEntity(proxyExchangeForEntity(uri, method, body, httpHeaders, request.getRequestURI(), getClientHeaders(request)), response);
+    }
+
+    public boolean isDataDownload(String requestUri) {
+        return upstreamResilience.isDataDownload(requestUri);
+    }
+
+    /**
+     * @return the headers of the client request the proxied response depends on, so the request is not read once
+     * the proxied request is executed asynchronously
+     */
+    public HttpHeaders getClientHeaders(HttpServletRequest request) {
+        HttpHeaders clientHeaders = new HttpHeaders();
+        for (String name : Arrays.asList(HttpHeaders.ACCEPT_ENCODING, HttpHeaders.IF_NONE_MATCH)) {
+            String value = request.getHeader(name);
+            if (StringUtils.isNotEmpty(value)) {
+                clientHeaders.set(name, value);
+            }
+        }
+        return clientHeaders;
+    }
+
+    /**
+     * Proxy a request which is not a data download to oncokb core, the same way as
+     * {@link #proxyExchange(URI, HttpMethod, String, HttpHeaders, HttpServletRequest, HttpServletResponse)}, and
+     * return the response instead of writing it. The asynchronous proxy returns it to Spring MVC, which writes it on
+     * the async dispatch so the response is never written concurrently with the filter chain. The body of a streamed
+     * response is copied from oncokb core when it is written, the upstream response is closed then.
+     *
+     * @param requestUri    the uri of the client request
+     * @param clientHeaders the headers of the client request, see {@link #getClientHeaders(HttpServletRequest)}
+     */
+    public ResponseEntity<StreamingResponseBody> proxyExchangeForEntity(URI uri, HttpMethod method, String body, HttpHeaders httpHeaders, String requestUri, HttpHeaders clientHeaders) throws IOException {
+        boolean isGet = HttpMethod.GET.equals(method);
+        boolean cacheable = isGet && proxyResponseCache.isCacheable(requestUri);
+        if (!cacheable && !(isGet && proxyRequestCoalescer.isCoalescable(requestUri))) {
+            return streamExchangeForEntity(uri, method, body, withAcceptEncoding(httpHeaders, clientHeaders));
+        }
+        Optional<ProxyResponse> cachedResponse = cacheable ? proxyResponseCache.get(uri) : Optional.empty();
+        ProxyResponse proxyResponse;
+        if (cachedResponse.isPresent()) {
+            proxyResponse = cachedResponse.get();
+        } else {
+            // Cache misses are coalesced as well
+            String hedgingRoute = upstreamResilience.getHedgingRoute(requestUri);
+            long maxBytes = cacheable ? proxyResponseCache.getMaxEntryBytes() : Long.MAX_VALUE;
+            proxyResponse = proxyRequestCoalescer.execute(uri + " " + httpHeaders, () -> hedgingRoute != null
+                ? upstreamResilience.hedge(hedgingRoute, onRequest -> bufferExchange(uri, method, body, httpHeaders, maxBytes, onRequest))
+                : bufferExchange(uri, method, body, httpHeaders, maxBytes));
+            if (proxyResponse == null) {
+                // Too large to be cached, it is not buffered either
+                return streamExchangeForEntity(uri, method, body, withAcceptEncoding(httpHeaders, clientHeaders));
+            }
+            if (cacheable) {
+                proxyResponse = proxyResponseCache.put(uri, proxyResponse);
+            }
+        }
+        return toEntity(proxyResponse, clientHeaders);
+    }
+
+    /**
+     * Let oncokb core compress the streamed response with an encoding the client accepts, the compressed bytes are then
+     * passed through untouched. The buffered responses are shared by clients accepting different encodings, so they
+     * are requested uncompressed and compressed by the server when written.
+     */
+    private HttpHeaders withAcceptEncoding(HttpHeaders httpHeaders, HttpHeaders clientHeaders) {
+        String acceptEncoding = clientHeaders.getFirst(HttpHeaders.ACCEPT_ENCODING);
+        if (StringUtils.isEmpty(acceptEncoding)) {
+            return httpHeaders;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(httpHeaders);
+        headers.set(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        return headers;
+    }
+
+    /**
+     * Proxy the request to oncokb core and buffer the whole response. Only use it for small responses.
+     *
+     * @param maxBytes the largest body to buffer
+     * @return the response, or null if its body is larger than the max bytes. The rest of the body is then not read.
+     */
+    public ProxyResponse bufferExchange(URI uri, HttpMethod method, String body, HttpHeaders httpHeaders, long maxBytes) throws IOException {
+        return bufferExchange(uri, method, body, httpHeaders, maxBytes, upstreamRequest -> {});
+    }
+
+    /**
+     * @param onRequest receives the upstream request before it is executed, so a hedged call can abort it
+     */
+    private ProxyResponse bufferExchange(URI uri, HttpMethod method, String body, HttpHeaders httpHeaders, long maxBytes, Consumer<HttpUriRequest> onRequest) throws IOException {
+        UpstreamResilience.Permit permit = upstreamResilience.acquire(uri);
+        HttpUriRequest upstreamRequest = null;
+        try {
+            upstreamRequest = buildRequest(uri, method, body, httpHeaders);
+            onRequest.accept(upstreamRequest);
+            try (CloseableHttpResponse upstreamResponse = apiProxyClientPool.getHttpClient(uri).execute(upstreamRequest)) {
+                HttpHeaders headers = new HttpHeaders();
+                for (Header header : upstreamResponse.getAllHeaders()) {
+                    if (!HOP_BY_HOP_HEADERS.contains(header.getName().toLowerCase()) && !HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(header.getName())) {
+                        headers.add(header.getName(), header.getValue());
+                    }
+                }
+                int status = upstreamResponse.getStatusLine().getStatusCode();
+                permit.complete(status < HttpStatus.INTERNAL_SERVER_ERROR.value());
+                org.apache.http.HttpEntity entity = upstreamResponse.getEntity();
+                byte[] responseBody = entity == null ? new byte[0] : readBody(entity, maxBytes);
+                if (responseBody == null) {
+                    // Drop the connection instead of reading the rest of the body
+                    upstreamRequest.abort();
+                    return null;
+                }
+                return new ProxyResponse(status, headers, responseBody);
+            }
+        } catch (IOException | RuntimeException e) {
+            // A hedged call aborted once the other call won is not a failure of oncokb core
+            if (upstreamRequest == null || !upstreamRequest.isAborted()) {
+                permit.complete(false);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the body, or null if it is larger than the max bytes. The length is checked first when it is known.
+     */
+    private byte[] readBody(org.apache.http.HttpEntity entity, long maxBytes) throws IOException {
+        if (entity.getContentLength() > maxBytes) {
+            return null;
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) Math.max(4096, Math.min(entity.getContentLength(), 1 << 20)));
+        InputStream inputStream = entity.getContent();
+        byte[] buffer = new byte[4096];
+        long read = 0;
+        int count;
+        while ((count = inputStream.read(buffer)) != -1) {
+            read += count;
+            if (read > maxBytes) {
+                return null;
+            }
+            outputStream.write(buffer, 0, count);
+        }
+        inputStream.close();
+        return outputStream.toByteArray();
+    }
+
+    private ResponseEntity<StreamingResponseBody> toEntity(ProxyResponse proxyResponse, HttpHeaders clientHeaders) {
+        String eTag = proxyResponse.getETag();
+        if (eTag != null && matchesETag(clientHeaders.getFirst(HttpHeaders.IF_NONE_MATCH), eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        byte[] responseBody = proxyResponse.getBody();
+        return ResponseEntity.status(proxyResponse.getStatus())
+            .headers(proxyResponse.getHeaders())
+            .contentLength(responseBody.length)
+            .body(outputStream -> outputStream.write(responseBody));
+    }
+
+    /**
+     * Write the response on the calling thread, for the requests which are not proxied asynchronously.
+     */
+    private void writeEntity(ResponseEntity<StreamingResponseBody> entity, HttpServletResponse response) throws IOException {
+        response.setStatus(entity.getStatusCodeValue());
+        entity.getHeaders().forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+        if (entity.getBody() != null) {
+            entity.getBody().writeTo(response.getOutputStream());
+            response.getOutputStream().flush();
+        }
+    }
+
+    private boolean matchesETag(String ifNoneMatch, String eTag) {
+        if (StringUtils.isEmpty(ifNoneMatch)) {
+            return false;
+        }
+        String strongETag = StringUtils.removeStart(eTag, "W/");
+        return Arrays.stream(ifNoneMatch.split(","))
+            .map(String::trim)
+            .anyMatch(candidate -> "*".equals(candidate) || StringUtils.removeStart(candidate, "W/").equals(strongETag));
+    }
+
+    private HttpUriRequest buildRequest(URI uri, HttpMethod method, String body, HttpHeaders httpHeaders) {
+        RequestBuilder requestBuilder = RequestBuilder.create(method.name()).setUri(uri);
+        httpHeaders.forEach((name, values) -> values.forEach(value -> requestBuilder.addHeader(name, value)));
+        if (body != null) {
+            requestBuilder.setEntity(new ByteArrayEntity(body.getBytes(StandardCharsets.UTF_8)));
+        }
+        return requestBuilder.build();
+    }
+
+    /**
+     * Proxy the request to oncokb core and copy the upstream response straight to the servlet response.
+     * The body is never buffered as a whole, so the heap used per request does not depend on the payload size.
+     *
+     * @param uri         the oncokb core uri
+     * @param method      the http method
+     * @param body        the request body, can be null
+     * @param httpHeaders the headers to send upstream
+     * @param response    the servlet response to write to
+     * @throws IOException if the upstream or the client connection fails
+     * @throws UpstreamUnavailableException if the circuit of the upstream is open
+     */
+    public void streamExchange(URI uri, HttpMethod method, String body, HttpHeaders httpHeaders, HttpServletResponse response) throws IOException {
+        try (CloseableHttpResponse upstreamResponse = executeStream(uri, method, body, httpHeaders)) {
+            copyStatusAndHeaders(upstreamResponse, response);
+            copyBody(upstreamResponse, response);
+        }
+    }
+
+    /**
+     * Proxy the request to oncokb core and return its response once the status and headers are received. The body is
+     * copied from the upstream response when it is written, and the upstream response is then closed.
+     */
+    private ResponseEntity<StreamingResponseBody> streamExchangeForEntity(URI uri, HttpMethod method, String body, HttpHeaders httpHeaders) throws IOException {
+        CloseableHttpResponse upstreamResponse = executeStream(uri, method, body, httpHeaders);
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(upstreamResponse.getStatusLine().getStatusCode())
+            .headers(getResponseHeaders(upstreamResponse));
+        org.apache.http.HttpEntity entity = upstreamResponse.getEntity();
+        if (entity == null) {
+            upstreamResponse.close();
+            return builder.build();
+        }
+        return builder.body(outputStream -> {
+            try (CloseableHttpResponse closedResponse = upstreamResponse) {
+                copy(entity.getContent(), outputStream);
+            }
+        });
+    }
+
+    /**
+     * Stream a data download. The Range and If-Range headers of the client are forwarded and the response of oncokb
+     * core is passed through as it is, a 206, a 416 or the whole file. The range is never cut out of the whole file
+     * here, that would pull the skipped bytes through the pod, the ranges of the spooled files are served locally.
+     */
+    private void streamDataDownload(URI uri, HttpMethod method, String body, HttpHeaders httpHeaders, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        HttpHeaders headers = httpHeaders;
+        if (HttpMethod.GET.equals(method) && StringUtils.isNotEmpty(request.getHeader(HttpHeaders.RANGE))) {
+            headers = new HttpHeaders();
+            headers.putAll(httpHeaders);
+            headers.set(HttpHeaders.RANGE, request.getHeader(HttpHeaders.RANGE));
+            if (StringUtils.isNotEmpty(request.getHeader(HttpHeaders.IF_RANGE))) {
+                headers.set(HttpHeaders.IF_RANGE, request.getHeader(HttpHeaders.IF_RANGE));
+            }
+        }
+
+        try (CloseableHttpResponse upstreamResponse = executeStream(uri, method, body, headers)) {
+            copyStatusAndHeaders(upstreamResponse, response);
+            copyBody(upstreamResponse, response);
+        }
+    }
+
+    private List<HttpRange> parseRanges(String range) {
+        if (StringUtils.isEmpty(range)) {
+            return Collections.emptyList();
+        }
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            // An invalid Range header is ignored
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Serve the local copy of a data download, the file is sent straight from its channel. Ranges are supported the
+     * same way as for the streamed downloads.
+     *
+     * @return false if the file was deleted in the meantime, nothing has been written then
+     */
+    private boolean writeSpooledFile(DataReleaseSpool.SpooledFile spooledFile, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        FileChannel fileChannel;
+        try {
+            fileChannel = FileChannel.open(spooledFile.getPath(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        try (FileChannel channel = fileChannel) {
+            if (matchesETag(request.getHeader(HttpHeaders.IF_NONE_MATCH), spooledFile.getETag())) {
+                response.setStatus(HttpStatus.NOT_MODIFIED.value());
+                response.setHeader(HttpHeaders.ETAG, spooledFile.getETag());
+                return true;
+            }
+            long length = spooledFile.getSize();
+            long start = 0;
+            long end = length - 1;
+            List<HttpRange> ranges = parseRanges(request.getHeader(HttpHeaders.RANGE));
+            boolean partial = ranges.size() == 1
+                && ifRangeMatches(request.getHeader(HttpHeaders.IF_RANGE), spooledFile.getETag(), spooledFile.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED));
+            if (partial) {
+                try {
+                    start = ranges.get(0).getRangeStart(length);
+                    end = ranges.get(0).getRangeEnd(length);
+                } catch (IllegalArgumentException e) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return true;
+                }
+            }
+
+            response.setStatus(partial ? HttpStatus.PARTIAL_CONTENT.value() : HttpStatus.OK.value());
+            spooledFile.getHeaders().forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+            response.setHeader(HttpHeaders.ETAG, spooledFile.getETag());
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            if (partial) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+            response.setContentLengthLong(end - start + 1);
+
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = end - start + 1;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+            response.getOutputStream().flush();
+            return true;
+        }
+    }
+
+    /**
+     * Whether the representation the client resumes is still the current one. Weak validators never match.
+     */
+    private boolean ifRangeMatches(String ifRange, String eTag, String lastModified) {
+        if (StringUtils.isEmpty(ifRange)) {
+            return true;
+        }
+        if (ifRange.startsWith("W/")) {
+            return false;
+        }
+        return ifRange.equals(ifRange.startsWith("\"") ? eTag : lastModified);
+    }
+
+    private CloseableHttpResponse executeStream(URI uri, HttpMethod method, String body, HttpHeaders httpHeaders) throws IOException {
+        UpstreamResilience.Permit permit = upstreamResilience.acquire(uri);
+        CloseableHttpResponse executedResponse;
+        try {
+            executedResponse = apiProxyClientPool.getHttpClient(uri).execute(buildRequest(uri, method, body, httpHeaders));
+        } catch (IOException | RuntimeException e) {
+            permit.complete(false);
+            throw e;
+        }
+        // Failures while copying the body are mostly client disconnections, they are not held against the upstream
+        permit.complete(executedResponse.getStatusLine().getStatusCode() < HttpStatus.INTERNAL_SERVER_ERROR.value());
+        return executedResponse;
+    }
+
+    private void copyStatusAndHeaders(CloseableHttpResponse upstreamResponse, HttpServletResponse response) {
+        response.setStatus(upstreamResponse.getStatusLine().getStatusCode());
+        getResponseHeaders(upstreamResponse).forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+    }
+
+    private HttpHeaders getResponseHeaders(CloseableHttpResponse upstreamResponse) {
+        HttpHeaders headers = new HttpHeaders();
+        for (Header header : upstreamResponse.getAllHeaders()) {
+            if (!HOP_BY_HOP_HEADERS.contains(header.getName().toLowerCase())) {
+                headers.add(header.getName(), header.getValue());
+            }
+        }
+        // The response depends on the Accept-Encoding of the request when it is passed through compressed
+        if (upstreamResponse.containsHeader(HttpHeaders.CONTENT_ENCODING) && !upstreamResponse.containsHeader(HttpHeaders.VARY)) {
+            headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        return headers;
+    }
+
+    /**
+     * Copy the upstream body. The upstream stream is only read to its end, when the client goes away the upstream
+     * connection is dropped by closing the response rather than drained.
+     */
+    private void copyBody(CloseableHttpResponse upstreamResponse, HttpServletResponse response) throws IOException {
+        org.apache.http.HttpEntity entity = upstreamResponse.getEntity();
+        if (entity == null) {
+            return;
+        }
+        if (entity.getContentLength() >= 0) {
+            response.setContentLengthLong(entity.getContentLength());
+        }
+        copy(entity.getContent(), response.getOutputStream());
+    }
+
+    private void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, bytesRead);
+        }
+        outputStream.flush();
     }
 }
@@ -0,0 +1,131 @@
+package org.mskcc.cbio.oncokb.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.application.AsyncProxyProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes the proxied requests on a dedicated pool with Spring MVC async, so slow requests to oncokb core do not
+ * hold the servlet threads serving cheap requests like /api/account. The response is returned through a
+ * {@link DeferredResult} and written by Spring MVC on the async dispatch, never from the pool threads.
+ * <p>
+ * The in-flight requests are capped per route. A request to a saturated route, or rejected by the pool, is answered
+ * right away with 503 and a Retry-After header instead of waiting.
+ */
+@Component
+public class AsyncProxyExecutor implements DisposableBean {
+    public static final String DEFAULT_ROUTE = "other";
+
+    private final Logger log = LoggerFactory.getLogger(AsyncProxyExecutor.class);
+
+    private final AsyncProxyProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ThreadPoolTaskExecutor executor;
+
+    private final ConcurrentMap<String, Semaphore> inFlightByRoute = new ConcurrentHashMap<>();
+
+    public AsyncProxyExecutor(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getAsyncProxy();
+        this.meterRegistry = meterRegistry;
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setCorePoolSize(properties.getThreads());
+        this.executor.setMaxPoolSize(properties.getThreads());
+        this.executor.setQueueCapacity(properties.getQueueCapacity());
+        this.executor.setAllowCoreThreadTimeOut(true);
+        this.executor.setThreadNamePrefix("oncokb-proxy-");
+        this.executor.initialize();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * @return the pool the proxied requests are executed on, Spring MVC writes the streamed bodies on it as well
+     */
+    public AsyncTaskExecutor getTaskExecutor() {
+        return executor;
+    }
+
+    /**
+     * Execute the call asynchronously.
+     *
+     * @param route the route of the request, in-flight requests are capped per route
+     * @param call  the call proxying the request
+     * @return the response of the call, set once the call returns
+     * @throws UpstreamUnavailableException when the route is saturated or the pool is full
+     */
+    public DeferredResult<ResponseEntity<StreamingResponseBody>> execute(String route, ProxyCall call) {
+        Semaphore inFlight = getInFlight(route);
+        if (!inFlight.tryAcquire()) {
+            throw reject(route, "saturated");
+        }
+
+        // The upstream timeouts bound the call
+        DeferredResult<ResponseEntity<StreamingResponseBody>> result = new DeferredResult<>(0L);
+        long submitted = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                meterRegistry.timer("oncokb.proxy.queue.wait", "route", route).record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                try {
+                    result.setResult(call.execute());
+                } catch (UpstreamUnavailableException e) {
+                    result.setErrorResult(e);
+                } catch (Exception e) {
+                    log.warn("Failed to proxy the request of route {}", route, e);
+                    result.setResult(ResponseEntity.status(HttpStatus.BAD_GATEWAY).build());
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (TaskRejectedException e) {
+            inFlight.release();
+            throw reject(route, "queue-full");
+        }
+        return result;
+    }
+
+    private Semaphore getInFlight(String route) {
+        return inFlightByRoute.computeIfAbsent(route, key -> {
+            Semaphore semaphore = new Semaphore(properties.getRouteMaxInFlight().getOrDefault(key, properties.getMaxInFlightPerRoute()));
+            int maxInFlight = semaphore.availablePermits();
+            meterRegistry.gauge("oncokb.proxy.in.flight", Tags.of("route", key), semaphore, permits -> maxInFlight - permits.availablePermits());
+            return semaphore;
+        });
+    }
+
+    private UpstreamUnavailableException reject(String route, String reason) {
+        Counter.builder("oncokb.proxy.rejections").tags("route", route, "reason", reason).register(meterRegistry).increment();
+        return new UpstreamUnavailableException("The server is busy, please retry later", properties.getRetryAfterSeconds());
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    @FunctionalInterface
+    public interface ProxyCall {
+        ResponseEntity<StreamingResponseBody> execute() throws Exception;
+    }
+}
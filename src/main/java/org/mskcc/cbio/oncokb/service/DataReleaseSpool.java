@@ -0,0 +1,436 @@
+package org.mskcc.cbio.oncokb.service;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.application.DataReleaseSpoolProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps local disk copies of the data release files of oncokb core, like the sql dumps, which only change with a
+ * data release.
+ * <p>
+ * Only the requests of a spooled path for a single allowed release version, like {@code sqlDump?version=v4.26}, are
+ * spooled, other requests are streamed from oncokb core as before. The allowed versions are the configured ones and the
+ * current data version of each upstream, so arbitrary query strings cannot fill the disk. The file of a release version
+ * never changes, a file is keyed by its upstream, path and version. The files are downloaded as soon as their version
+ * is allowed, and again in the background if one is missing when requested. Downloads run one at a time.
+ * The least recently used files are deleted when the total size exceeds the limit, the files of a previous data
+ * version which is not configured are deleted once the data version changes.
+ */
+@Component
+public class DataReleaseSpool implements DisposableBean {
+    private static final String INFO_PATH = "/api/v1/info";
+    private static final String DATA_VERSION = "dataVersion";
+    private static final String VERSION = "version";
+    // The missing files are queued again at the next data version check
+    private static final int MAX_QUEUED_DOWNLOADS = 16;
+    private static final Pattern VERSION_QUERY = Pattern.compile(VERSION + "=([\\w.-]+)");
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    // The files of the spool are named after their md5 key, the partial downloads get a temp file suffix
+    private static final Pattern SPOOL_FILE_NAME = Pattern.compile("[0-9a-f]{32}(\\d+\\.tmp)?");
+    // The upstream headers kept with the file
+    private static final List<String> KEPT_HEADERS = Arrays.asList(
+        HttpHeaders.CONTENT_TYPE, HttpHeaders.CONTENT_DISPOSITION, HttpHeaders.LAST_MODIFIED
+    );
+
+    private final Logger log = LoggerFactory.getLogger(DataReleaseSpool.class);
+
+    private final ApplicationProperties applicationProperties;
+
+    private final DataReleaseSpoolProperties properties;
+
+    private final ApiProxyClientPool apiProxyClientPool;
+
+    private final UpstreamResilience upstreamResilience;
+
+    private final Path directory;
+
+    // Guarded by this, in access order so the first file is the least recently used
+    private final LinkedHashMap<String, SpooledFile> files = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes;
+
+    private final Set<String> downloading = ConcurrentHashMap.newKeySet();
+
+    // The current data version of each upstream url
+    private final Map<String, String> dataVersions = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService dataVersionChecker;
+
+    private final ExecutorService downloader;
+
+    private final Counter hitCounter;
+
+    private final Counter missCounter;
+
+    public DataReleaseSpool(ApplicationProperties applicationProperties, ApiProxyClientPool apiProxyClientPool, UpstreamResilience upstreamResilience, MeterRegistry meterRegistry) throws IOException {
+        this.applicationProperties = applicationProperties;
+        this.properties = applicationProperties.getDataReleaseSpool();
+        this.apiProxyClientPool = apiProxyClientPool;
+        this.upstreamResilience = upstreamResilience;
+        this.directory = Paths.get(properties.getDirectory());
+        this.hitCounter = meterRegistry.counter("oncokb.proxy.spool.requests", "result", "hit");
+        this.missCounter = meterRegistry.counter("oncokb.proxy.spool.requests", "result", "miss");
+        meterRegistry.gauge("oncokb.proxy.spool.bytes", this, DataReleaseSpool::getTotalBytes);
+
+        if (properties.isEnabled()) {
+            Files.createDirectories(directory);
+            deleteSpoolFiles();
+            this.downloader = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_DOWNLOADS), runnable -> {
+                Thread thread = new Thread(runnable, "oncokb-data-release-spool");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.dataVersionChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "oncokb-data-release-version");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.dataVersionChecker.scheduleWithFixedDelay(this::checkDataVersions, 0, properties.getDataVersionCheckSeconds(), TimeUnit.SECONDS);
+        } else {
+            this.downloader = null;
+            this.dataVersionChecker = null;
+        }
+    }
+
+    /**
+     * Get the local copy of the file. When there is none yet, its download is started in the background.
+     *
+     * @param uri the oncokb core uri of the file
+     * @return the local copy, or empty if the request has to be proxied
+     */
+    public Optional<SpooledFile> get(URI uri) {
+        if (!properties.isEnabled()) {
+            return Optional.empty();
+        }
+        Optional<String> upstreamUrl = getUpstreamUrl(uri);
+        if (!upstreamUrl.isPresent()) {
+            return Optional.empty();
+        }
+        String pathAndQuery = uri.toString().substring(upstreamUrl.get().length());
+        int queryStart = pathAndQuery.indexOf('?');
+        if (queryStart < 0 || !properties.getPaths().contains(pathAndQuery.substring(0, queryStart))) {
+            return Optional.empty();
+        }
+        Matcher versionMatcher = VERSION_QUERY.matcher(pathAndQuery.substring(queryStart + 1));
+        if (!versionMatcher.matches() || !isAllowed(upstreamUrl.get(), versionMatcher.group(1))) {
+            return Optional.empty();
+        }
+        String path = pathAndQuery.substring(0, queryStart);
+        String version = versionMatcher.group(1);
+        String key = getKey(upstreamUrl.get(), path, version);
+        SpooledFile spooledFile;
+        synchronized (this) {
+            spooledFile = files.get(key);
+        }
+        if (spooledFile != null) {
+            hitCounter.increment();
+            return Optional.of(spooledFile);
+        }
+        missCounter.increment();
+        download(upstreamUrl.get(), path, version);
+        return Optional.empty();
+    }
+
+    private Optional<String> getUpstreamUrl(URI uri) {
+        String uriString = uri.toString();
+        return getUpstreamUrls().stream()
+            .filter(uriString::startsWith)
+            .max(Comparator.comparingInt(String::length));
+    }
+
+    private List<String> getUpstreamUrls() {
+        List<String> upstreamUrls = new ArrayList<>();
+        upstreamUrls.add(applicationProperties.getApiProxyUrl());
+        if (StringUtils.isNotEmpty(applicationProperties.getApiProxyGermlineUrl())) {
+            upstreamUrls.add(applicationProperties.getApiProxyGermlineUrl());
+        }
+        return upstreamUrls;
+    }
+
+    private boolean isAllowed(String upstreamUrl, String version) {
+        return properties.getVersions().contains(version) || version.equals(dataVersions.get(upstreamUrl));
+    }
+
+    private String getKey(String upstreamUrl, String path, String version) {
+        return DigestUtils.md5DigestAsHex((upstreamUrl + path + "?" + VERSION + "=" + version).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void download(String upstreamUrl, String path, String version) {
+        String key = getKey(upstreamUrl, path, version);
+        if (!downloading.add(key)) {
+            return;
+        }
+        // The version only has word characters, dots and dashes
+        URI uri = URI.create(upstreamUrl + path + "?" + VERSION + "=" + version);
+        try {
+            downloader.execute(() -> {
+                try {
+                    synchronized (this) {
+                        if (files.containsKey(key)) {
+                            return;
+                        }
+                    }
+                    spool(uri, upstreamUrl, version, key);
+                } catch (Exception e) {
+                    log.warn("Failed to spool {}", uri, e);
+                } finally {
+                    downloading.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            downloading.remove(key);
+            log.warn("Too many downloads are queued, {} is not spooled", uri);
+        }
+    }
+
+    private void spool(URI uri, String upstreamUrl, String version, String key) throws IOException {
+        UpstreamResilience.Permit permit = upstreamResilience.acquire(uri);
+        HttpGet httpGet = new HttpGet(uri);
+        CloseableHttpResponse executedResponse;
+        try {
+            executedResponse = apiProxyClientPool.getHttpClient(uri).execute(httpGet);
+        } catch (IOException | RuntimeException e) {
+            permit.complete(false);
+            throw e;
+        }
+        permit.complete(executedResponse.getStatusLine().getStatusCode() < HttpStatus.INTERNAL_SERVER_ERROR.value());
+
+        Path tempFile = null;
+        try (CloseableHttpResponse upstreamResponse = executedResponse) {
+            org.apache.http.HttpEntity entity = upstreamResponse.getEntity();
+            if (upstreamResponse.getStatusLine().getStatusCode() != HttpStatus.OK.value() || entity == null
+                || upstreamResponse.containsHeader(HttpHeaders.CONTENT_ENCODING) || entity.getContentLength() > properties.getMaxSizeBytes()) {
+                return;
+            }
+            tempFile = Files.createTempFile(directory, key, ".tmp");
+            try (InputStream inputStream = entity.getContent(); OutputStream outputStream = Files.newOutputStream(tempFile)) {
+                // The length is not known in advance for a chunked response
+                if (!copy(inputStream, outputStream, properties.getMaxSizeBytes())) {
+                    log.warn("{} is larger than the spool, it is not spooled", uri);
+                    // Drop the connection instead of reading the rest of the body when the stream is closed
+                    httpGet.abort();
+                    return;
+                }
+            }
+            Path file = directory.resolve(key);
+            Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            tempFile = null;
+
+            HttpHeaders headers = new HttpHeaders();
+            for (String headerName : KEPT_HEADERS) {
+                Header header = upstreamResponse.getFirstHeader(headerName);
+                if (header != null) {
+                    headers.set(headerName, header.getValue());
+                }
+            }
+            add(key, new SpooledFile(file, Files.size(file), "\"" + key + "\"", headers, upstreamUrl, version));
+            log.info("Spooled {}", uri);
+        } finally {
+            if (tempFile != null) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    /**
+     * Delete the files left by a previous run. The other files of the directory are not touched, it may be shared.
+     */
+    private void deleteSpoolFiles() throws IOException {
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory,
+            path -> Files.isRegularFile(path) && SPOOL_FILE_NAME.matcher(path.getFileName().toString()).matches())) {
+            for (Path path : paths) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * @return false if the input is longer than the max bytes, it is then only copied up to the max bytes
+     */
+    private static boolean copy(InputStream inputStream, OutputStream outputStream, long maxBytes) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long copied = 0;
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            copied += read;
+            if (copied > maxBytes) {
+                return false;
+            }
+            outputStream.write(buffer, 0, read);
+        }
+        return true;
+    }
+
+    private synchronized void add(String key, SpooledFile spooledFile) {
+        // The data version may have changed during the download, after the files of the version were removed
+        if (spooledFile.getSize() > properties.getMaxSizeBytes() || !isAllowed(spooledFile.getUpstreamUrl(), spooledFile.getVersion())) {
+            delete(spooledFile);
+            return;
+        }
+        files.put(key, spooledFile);
+        totalBytes += spooledFile.getSize();
+        Iterator<SpooledFile> iterator = files.values().iterator();
+        while (totalBytes > properties.getMaxSizeBytes() && iterator.hasNext()) {
+            SpooledFile eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getSize();
+            delete(eldest);
+        }
+    }
+
+    /**
+     * Remove the files of the versions of the upstream which are no longer allowed.
+     */
+    private synchronized void removeDisallowed(String upstreamUrl) {
+        Iterator<SpooledFile> iterator = files.values().iterator();
+        while (iterator.hasNext()) {
+            SpooledFile spooledFile = iterator.next();
+            if (spooledFile.getUpstreamUrl().equals(upstreamUrl) && !isAllowed(upstreamUrl, spooledFile.getVersion())) {
+                iterator.remove();
+                totalBytes -= spooledFile.getSize();
+                delete(spooledFile);
+            }
+        }
+    }
+
+    // A file being served stays readable until it is closed
+    private void delete(SpooledFile spooledFile) {
+        try {
+            Files.deleteIfExists(spooledFile.getPath());
+        } catch (IOException e) {
+            log.warn("Failed to delete {}", spooledFile.getPath(), e);
+        }
+    }
+
+    private synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Refresh the current data version of the upstreams, and download the files of the allowed versions which are
+     * missing.
+     */
+    void checkDataVersions() {
+        for (String upstreamUrl : getUpstreamUrls()) {
+            try {
+                URI uri = new URI(upstreamUrl + INFO_PATH);
+                String info = apiProxyClientPool.getRestTemplate(uri).getForObject(uri, String.class);
+                JsonElement dataVersion = JsonParser.parseString(info).getAsJsonObject().get(DATA_VERSION);
+                if (dataVersion != null && dataVersion.isJsonObject() && dataVersion.getAsJsonObject().has(VERSION)) {
+                    String version = dataVersion.getAsJsonObject().get(VERSION).getAsString();
+                    String previousVersion = dataVersions.put(upstreamUrl, version);
+                    if (previousVersion != null && !version.equals(previousVersion)) {
+                        removeDisallowed(upstreamUrl);
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("Failed to check the data version of {}", upstreamUrl, e);
+            }
+            Set<String> versions = new LinkedHashSet<>();
+            Optional.ofNullable(dataVersions.get(upstreamUrl)).ifPresent(versions::add);
+            versions.addAll(properties.getVersions());
+            for (String version : versions) {
+                for (String path : properties.getPaths()) {
+                    boolean spooled;
+                    synchronized (this) {
+                        spooled = files.containsKey(getKey(upstreamUrl, path, version));
+                    }
+                    if (!spooled) {
+                        download(upstreamUrl, path, version);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (dataVersionChecker != null) {
+            dataVersionChecker.shutdownNow();
+        }
+        if (downloader != null) {
+            downloader.shutdownNow();
+        }
+    }
+
+    /**
+     * A local copy of a data release file.
+     */
+    public static class SpooledFile {
+        private final Path path;
+        private final long size;
+        private final String eTag;
+        private final HttpHeaders headers;
+        private final String upstreamUrl;
+        private final String version;
+
+        SpooledFile(Path path, long size, String eTag, HttpHeaders headers, String upstreamUrl, String version) {
+            this.path = path;
+            this.size = size;
+            this.eTag = eTag;
+            this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+            this.upstreamUrl = upstreamUrl;
+            this.version = version;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        String getUpstreamUrl() {
+            return upstreamUrl;
+        }
+
+        String getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.mskcc.cbio.oncokb.service;
+
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConsumptionProbe;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.application.BandwidthProperties;
+import org.mskcc.cbio.oncokb.config.application.RateLimitProperties;
+import org.mskcc.cbio.oncokb.config.cache.CacheNameResolver;
+import org.mskcc.cbio.oncokb.domain.UserDetails;
+import org.mskcc.cbio.oncokb.domain.enumeration.LicenseType;
+import org.mskcc.cbio.oncokb.repository.UserDetailsRepository;
+import org.mskcc.cbio.oncokb.repository.UserRepository;
+import org.mskcc.cbio.oncokb.security.AuthoritiesConstants;
+import org.mskcc.cbio.oncokb.security.SecurityUtils;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.mskcc.cbio.oncokb.config.cache.UserCacheResolver.RATE_LIMIT_TIER_BY_LOGIN_CACHE;
+
+/**
+ * Rate limits the requests proxied to oncokb core, so one tenant's batch job cannot starve the others.
+ * <p>
+ * Requests are limited per token with the bandwidth of the tier of the user: its license type, SERVICE_ACCOUNT or
+ * PUBLIC_WEBSITE. The public website token is shared by every visitor, so those requests are limited per client ip,
+ * like the requests without a token.
+ */
+@Service
+public class ProxyRateLimitService {
+    public static final String DEFAULT_TIER = "DEFAULT";
+    public static final String SERVICE_ACCOUNT_TIER = "SERVICE_ACCOUNT";
+    public static final String PUBLIC_WEBSITE_TIER = "PUBLIC_WEBSITE";
+
+    private static final String BUCKET_KEY_PREFIX = "proxy-";
+
+    private final RateLimitService rateLimitService;
+
+    private final UserRepository userRepository;
+
+    private final UserDetailsRepository userDetailsRepository;
+
+    private final UsageRouteMatcher usageRouteMatcher;
+
+    private final MeterRegistry meterRegistry;
+
+    private final RateLimitProperties properties;
+
+    private final Map<String, BucketConfiguration> tierConfigurations = new HashMap<>();
+
+    private final Map<String, Long> tierCapacities = new HashMap<>();
+
+    private final CacheManager cacheManager;
+
+    private final CacheNameResolver cacheNameResolver;
+
+    public ProxyRateLimitService(ApplicationProperties applicationProperties, RateLimitService rateLimitService, UserRepository userRepository, UserDetailsRepository userDetailsRepository, UsageRouteMatcher usageRouteMatcher, CacheManager cacheManager, CacheNameResolver cacheNameResolver, MeterRegistry meterRegistry) {
+        this.rateLimitService = rateLimitService;
+        this.cacheManager = cacheManager;
+        this.cacheNameResolver = cacheNameResolver;
+        this.userRepository = userRepository;
+        this.userDetailsRepository = userDetailsRepository;
+        this.usageRouteMatcher = usageRouteMatcher;
+        this.meterRegistry = meterRegistry;
+        this.properties = applicationProperties.getRateLimit();
+        for (Map.Entry<String, BandwidthProperties> tier : properties.getProxyTiers().entrySet()) {
+            tierConfigurations.put(tier.getKey(), BucketConfiguration.builder().addLimit(RateLimitService.toBandwidth(tier.getValue())).build());
+            tierCapacities.put(tier.getKey(), tier.getValue().getCapacity());
+        }
+    }
+
+    /**
+     * Consume the usage of the current request.
+     *
+     * @param request    the proxied request
+     * @param usageCount the number of usages this request counts for, capped to the capacity of the tier so a large
+     *                   batch can still go through once the bucket is full
+     * @return the consumption probe, or empty if the request is not rate limited
+     */
+    public Optional<ConsumptionProbe> tryConsume(HttpServletRequest request, int usageCount) {
+        if (!properties.isProxyEnabled() || SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.ADMIN)) {
+            return Optional.empty();
+        }
+        Optional<String> login = SecurityUtils.getCurrentUserLogin();
+        Optional<UUID> token = SecurityUtils.getCurrentUserToken();
+        String tier = login.map(this::getTier).orElse(DEFAULT_TIER);
+        String bucketTier = tierConfigurations.containsKey(tier) ? tier : DEFAULT_TIER;
+        BucketConfiguration configuration = tierConfigurations.get(bucketTier);
+        if (configuration == null) {
+            return Optional.empty();
+        }
+
+        String key;
+        if (token.isPresent() && !PUBLIC_WEBSITE_TIER.equals(tier)) {
+            key = token.get().toString();
+        } else {
+            key = getClientIp(request);
+        }
+        long tokens = Math.max(1, Math.min(usageCount, tierCapacities.get(bucketTier)));
+        ConsumptionProbe probe = rateLimitService.resolveBucket(BUCKET_KEY_PREFIX + bucketTier + "-" + key, configuration).tryConsumeAndReturnRemaining(tokens);
+        meterRegistry.counter(
+            "oncokb.rate.limit.proxy",
+            "tier", bucketTier,
+            "route", usageRouteMatcher.getUsageBucket(request.getRequestURI()).orElse("other"),
+            "result", probe.isConsumed() ? "allowed" : "rejected"
+        ).increment();
+        return Optional.of(probe);
+    }
+
+    // The license type rarely changes, avoid looking it up on every request. The cache is evicted with the user caches.
+    private String getTier(String login) {
+        Cache cache = cacheManager.getCache(cacheNameResolver.getCacheName(RATE_LIMIT_TIER_BY_LOGIN_CACHE));
+        return cache == null ? loadTier(login) : cache.get(login, () -> loadTier(login));
+    }
+
+    private String loadTier(String login) {
+        if (SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.PUBLIC_WEBSITE)) {
+            return PUBLIC_WEBSITE_TIER;
+        }
+        if (SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.ROLE_SERVICE_ACCOUNT)) {
+            return SERVICE_ACCOUNT_TIER;
+        }
+        return userRepository.findOneWithAuthoritiesByLogin(login)
+            .flatMap(userDetailsRepository::findOneByUser)
+            .map(UserDetails::getLicenseType)
+            .map(LicenseType::name)
+            .orElse(DEFAULT_TIER);
+    }
+
+    // The forwarded headers are set by the client, they cannot key a rate limit
+    private String getClientIp(HttpServletRequest request) {
+        return StringUtils.defaultString(request.getRemoteAddr());
+    }
+}
@@ -0,0 +1,111 @@
+package org.mskcc.cbio.oncokb.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.application.RequestCoalescingProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Lets identical concurrent GET requests share a single call to oncokb core, so a burst of browsers opening the same
+ * page does not turn into a burst of upstream requests.
+ * <p>
+ * The first request of a key calls upstream, the others wait for its response. A request waiting longer than the
+ * timeout calls upstream on its own.
+ */
+@Component
+public class ProxyRequestCoalescer {
+
+    private final RequestCoalescingProperties properties;
+
+    private final RouteTrie routes;
+
+    private final ConcurrentMap<String, CompletableFuture<ProxyResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter forwardedCounter;
+
+    private final Counter coalescedCounter;
+
+    private final Counter timeoutCounter;
+
+    public ProxyRequestCoalescer(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getRequestCoalescing();
+        this.routes = new RouteTrie(properties.getRoutes());
+        this.forwardedCounter = meterRegistry.counter("oncokb.proxy.coalescing", "result", "forwarded");
+        this.coalescedCounter = meterRegistry.counter("oncokb.proxy.coalescing", "result", "coalesced");
+        this.timeoutCounter = meterRegistry.counter("oncokb.proxy.coalescing", "result", "timeout");
+    }
+
+    /**
+     * @return whether the request uri is a coalesced route, or a path under it
+     */
+    public boolean isCoalescable(String requestUri) {
+        return properties.isEnabled() && routes.matchSegments(requestUri) != null;
+    }
+
+    /**
+     * @param key  identifies identical requests, it has to include everything the response depends on
+     * @param call the upstream call
+     * @return the response of the shared call
+     */
+    public ProxyResponse execute(String key, UpstreamCall call) throws IOException {
+        if (!properties.isEnabled()) {
+            return call.execute();
+        }
+        CompletableFuture<ProxyResponse> future = new CompletableFuture<>();
+        CompletableFuture<ProxyResponse> existingFuture = inFlight.putIfAbsent(key, future);
+        if (existingFuture == null) {
+            forwardedCounter.increment();
+            try {
+                ProxyResponse response = call.execute();
+                future.complete(response);
+                return response;
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, future);
+            }
+        }
+
+        try {
+            ProxyResponse response = existingFuture.get(properties.getWaitTimeoutMillis(), TimeUnit.MILLISECONDS);
+            coalescedCounter.increment();
+            return response;
+        } catch (TimeoutException e) {
+            timeoutCounter.increment();
+            return call.execute();
+        } catch (ExecutionException e) {
+            throw toIOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the shared upstream call", e);
+        }
+    }
+
+    /**
+     * The waiters fail like the shared call did, e.g. with an {@link UpstreamUnavailableException} answered with 503.
+     */
+    private IOException toIOException(Throwable throwable) {
+        if (throwable instanceof IOException) {
+            return (IOException) throwable;
+        }
+        if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        }
+        return new IOException("The shared upstream call failed", throwable);
+    }
+
+    @FunctionalInterface
+    public interface UpstreamCall {
+        ProxyResponse execute() throws IOException;
+    }
+}
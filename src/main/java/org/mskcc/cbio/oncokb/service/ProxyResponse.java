@@ -0,0 +1,34 @@
+package org.mskcc.cbio.oncokb.service;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * A response of oncokb core buffered in memory, so it can be cached and written to several clients.
+ */
+public final class ProxyResponse {
+    private final int status;
+    private final HttpHeaders headers;
+    private final byte[] body;
+
+    public ProxyResponse(int status, HttpHeaders headers, byte[] body) {
+        this.status = status;
+        this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+        this.body = body;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getETag() {
+        return headers.getETag();
+    }
+}
@@ -0,0 +1,152 @@
+package org.mskcc.cbio.oncokb.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.apache.commons.lang3.StringUtils;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.application.ProxyCacheProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the responses of the near static public routes of oncokb core, like the levels and the curated genes.
+ * <p>
+ * Responses are keyed by the upstream uri, which includes the query and whether the germline upstream is used.
+ * Each cached response has an ETag, so the clients revalidating it get a 304 without the body. Entries expire after
+ * the ttl, and the whole cache is cleared when the data version of oncokb core changes.
+ */
+@Component
+public class ProxyResponseCache implements DisposableBean {
+    private static final String INFO_PATH = "/api/v1/info";
+    private static final String DATA_VERSION = "dataVersion";
+    // Rough overhead of an entry besides its body
+    private static final int ESTIMATED_ENTRY_BYTES = 512;
+
+    private final Logger log = LoggerFactory.getLogger(ProxyResponseCache.class);
+
+    private final ApplicationProperties applicationProperties;
+
+    private final ApiProxyClientPool apiProxyClientPool;
+
+    private final ProxyCacheProperties properties;
+
+    private final Cache<String, ProxyResponse> cache;
+
+    private final RouteTrie routes;
+
+    private final ScheduledExecutorService dataVersionChecker;
+
+    private final Map<String, String> dataVersions = new HashMap<>();
+
+    public ProxyResponseCache(ApplicationProperties applicationProperties, ApiProxyClientPool apiProxyClientPool, MeterRegistry meterRegistry) {
+        this.applicationProperties = applicationProperties;
+        this.apiProxyClientPool = apiProxyClientPool;
+        this.properties = applicationProperties.getProxyCache();
+        this.routes = new RouteTrie(properties.getRoutes());
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(properties.getMaxSizeBytes())
+            .weigher((String key, ProxyResponse response) -> ESTIMATED_ENTRY_BYTES + 2 * key.length() + response.getBody().length)
+            .expireAfterWrite(properties.getTimeToLiveSeconds(), TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "proxyResponses");
+
+        if (properties.isEnabled()) {
+            this.dataVersionChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "oncokb-proxy-cache-version");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.dataVersionChecker.scheduleWithFixedDelay(this::checkDataVersions, properties.getDataVersionCheckSeconds(), properties.getDataVersionCheckSeconds(), TimeUnit.SECONDS);
+        } else {
+            this.dataVersionChecker = null;
+        }
+    }
+
+    /**
+     * @return whether the request uri is a cached route, or a path under it
+     */
+    public boolean isCacheable(String requestUri) {
+        return properties.isEnabled() && routes.matchSegments(requestUri) != null;
+    }
+
+    /**
+     * @return the size of the largest response body cached, larger responses are streamed
+     */
+    public long getMaxEntryBytes() {
+        return properties.getMaxEntryBytes();
+    }
+
+    public Optional<ProxyResponse> get(URI uri) {
+        return Optional.ofNullable(cache.getIfPresent(uri.toString()));
+    }
+
+    /**
+     * Cache the response if it is a successful one and not too large.
+     *
+     * @return the response with an ETag header
+     */
+    public ProxyResponse put(URI uri, ProxyResponse response) {
+        if (response.getStatus() != HttpStatus.OK.value() || response.getBody().length > properties.getMaxEntryBytes()) {
+            return response;
+        }
+        ProxyResponse cachedResponse = response;
+        if (StringUtils.isEmpty(response.getETag())) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.putAll(response.getHeaders());
+            headers.setETag("\"" + DigestUtils.md5DigestAsHex(response.getBody()) + "\"");
+            cachedResponse = new ProxyResponse(response.getStatus(), headers, response.getBody());
+        }
+        cache.put(uri.toString(), cachedResponse);
+        return cachedResponse;
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    private void checkDataVersions() {
+        List<String> upstreamUrls = new ArrayList<>();
+        upstreamUrls.add(applicationProperties.getApiProxyUrl());
+        if (StringUtils.isNotEmpty(applicationProperties.getApiProxyGermlineUrl())) {
+            upstreamUrls.add(applicationProperties.getApiProxyGermlineUrl());
+        }
+        for (String upstreamUrl : upstreamUrls) {
+            try {
+                URI uri = new URI(upstreamUrl + INFO_PATH);
+                String info = apiProxyClientPool.getRestTemplate(uri).getForObject(uri, String.class);
+                JsonElement dataVersion = JsonParser.parseString(info).getAsJsonObject().get(DATA_VERSION);
+                String version = dataVersion == null ? null : dataVersion.toString();
+                String previousVersion = dataVersions.put(upstreamUrl, version);
+                if (previousVersion != null && !previousVersion.equals(version)) {
+                    log.info("The data version of {} changed from {} to {}, clearing the proxy response cache", upstreamUrl, previousVersion, version);
+                    clear();
+                }
+            } catch (Exception e) {
+                log.warn("Failed to check the data version of {}", upstreamUrl, e);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (dataVersionChecker != null) {
+            dataVersionChecker.shutdownNow();
+        }
+    }
+}
@@ -1,9 +1,21 @@
 package org.mskcc.cbio.oncokb.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.Refill;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import io.github.bucket4j.distributed.proxy.optimization.Optimization;
+import io.github.bucket4j.distributed.proxy.optimization.Optimizations;
+import io.github.bucket4j.local.LocalBucketBuilder;
 import io.github.jhipster.config.JHipsterProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.application.BandwidthProperties;
+import org.mskcc.cbio.oncokb.config.application.RateLimitProperties;
 import org.mskcc.cbio.oncokb.config.cache.CacheNameResolver;
 import org.mskcc.cbio.oncokb.config.cache.Buckert4jProxyManager;
 import org.redisson.config.Config;
@@ -12,9 +24,9 @@ import org.redisson.connection.ConnectionManager;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
-import java.util.Map;
+import java.util.Collections;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class RateLimitService {
@@ -24,30 +36,114 @@ public class RateLimitService {
         .addLimit(DEFAULT_BUCKET_BANDWIDTH)
         .build();
 
+    // Rough size of a local bucket with a single bandwidth and of a cache entry, used to bound the memory of the local buckets
+    private static final int ESTIMATED_BUCKET_BYTES = 256;
+    private static final int ESTIMATED_ENTRY_BYTES = 96;
+
     // local bucket when redis is not available
-    private final Map<String, Bucket> cache = new ConcurrentHashMap<>();
+    private final Cache<String, Bucket> cache;
+    // bucket proxies when they are synchronized with redis in batches, they hold the consumption not written to redis yet
+    private final Cache<String, Bucket> proxyCache;
 
     private CacheNameResolver cacheNameResolver;
     private Buckert4jProxyManager proxyManager;
+    private Optimization redisSyncOptimization;
 
-    public RateLimitService(Optional<Config> redissonConfigOptional, CacheNameResolver cacheNameResolver, JHipsterProperties jHipsterProperties) {
+    public RateLimitService(Optional<Config> redissonConfigOptional, CacheNameResolver cacheNameResolver, JHipsterProperties jHipsterProperties, ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
         this.cacheNameResolver = cacheNameResolver;
 
         if (redissonConfigOptional.isPresent()) {
             ConnectionManager manager = ConfigSupport.createConnectionManager(redissonConfigOptional.get());
             this.proxyManager = new Buckert4jProxyManager(manager.getCommandExecutor(), Duration.ofSeconds(jHipsterProperties.getCache().getRedis().getExpiration()));
         }
+
+        RateLimitProperties properties = applicationProperties.getRateLimit();
+        this.redisSyncOptimization = getRedisSyncOptimization(properties);
+
+        // A bucket idle for longer than its refill time is full, so expiring it does not reset a client's limit.
+        // The memory bound is a last resort against key churn, an active bucket evicted by it is recreated full and
+        // its client's limit is reset, the evictions are reported in the rateLimitBuckets cache metrics.
+        long idleNanos = Math.max(TimeUnit.SECONDS.toNanos(properties.getLocalBucketsIdleSeconds()), getRefillNanos(DEFAULT_BUCKET_BANDWIDTH));
+        for (BandwidthProperties bandwidth : properties.getProxyTiers().values()) {
+            idleNanos = Math.max(idleNanos, getRefillNanos(toBandwidth(bandwidth)));
+        }
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(properties.getLocalBucketsMaxMemoryBytes())
+            .weigher((String key, Bucket bucket) -> ESTIMATED_ENTRY_BYTES + ESTIMATED_BUCKET_BYTES + 2 * key.length())
+            .expireAfterAccess(idleNanos, TimeUnit.NANOSECONDS)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "rateLimitBuckets");
+        meterRegistry.gauge("oncokb.rate.limit.buckets.memory", Collections.emptyList(), cache,
+            localCache -> localCache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L));
+
+        // Not bounded by size, an evicted proxy would drop its unsynchronized consumption. A proxy idle for longer than
+        // the refill time may drop it, the bucket in redis has refilled those tokens since.
+        this.proxyCache = Caffeine.newBuilder()
+            .expireAfterAccess(Math.max(idleNanos, TimeUnit.MILLISECONDS.toNanos(properties.getRedisSyncMaxUnsynchronizedMillis())), TimeUnit.NANOSECONDS)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, proxyCache, "rateLimitBucketProxies");
     }
 
     public Bucket resolveBucket(String key) {
+        return resolveBucket(key, DEFAULT_BUCKET_CONFIG);
+    }
+
+    /**
+     * @param key           the bucket key, buckets with different configurations must not share a key
+     * @param configuration the configuration used when the bucket does not exist yet
+     */
+    public Bucket resolveBucket(String key, BucketConfiguration configuration) {
         if (proxyManager != null) {
-            return proxyManager.builder().build(this.cacheNameResolver.getCacheName(CACHE_KEY_PREFIX + key), DEFAULT_BUCKET_CONFIG);
+            if (redisSyncOptimization == null) {
+                return proxyManager.builder().build(this.cacheNameResolver.getCacheName(CACHE_KEY_PREFIX + key), configuration);
+            }
+            // The unsynchronized consumption is kept in the proxy, so the proxy has to be reused across requests
+            return proxyCache.get(key, bucketKey -> proxyManager.builder()
+                .withOptimization(redisSyncOptimization)
+                .build(this.cacheNameResolver.getCacheName(CACHE_KEY_PREFIX + bucketKey), configuration));
         } else {
-            return cache.computeIfAbsent(key, this::newBucket);
+            return cache.get(key, bucketKey -> newBucket(configuration));
         }
     }
 
-    private Bucket newBucket(String apiKey) {
-        return Bucket.builder().addLimit(DEFAULT_BUCKET_BANDWIDTH).build();
+    private Bucket newBucket(BucketConfiguration configuration) {
+        LocalBucketBuilder builder = Bucket.builder();
+        for (Bandwidth bandwidth : configuration.getBandwidths()) {
+            builder.addLimit(bandwidth);
+        }
+        return builder.build();
+    }
+
+    /**
+     * With an optimization, tokens are granted from the local copy of the bucket and the consumption is written to
+     * redis once {@code redisSyncMaxUnsynchronizedTokens} tokens are consumed or after
+     * {@code redisSyncMaxUnsynchronizedMillis}. Each pod can then overshoot the limit by up to
+     * {@code redisSyncMaxUnsynchronizedTokens}.
+     */
+    static Optimization getRedisSyncOptimization(RateLimitProperties properties) {
+        DelayParameters delayParameters = new DelayParameters(
+            properties.getRedisSyncMaxUnsynchronizedTokens(),
+            Duration.ofMillis(properties.getRedisSyncMaxUnsynchronizedMillis())
+        );
+        switch (properties.getRedisSync()) {
+            case BATCHING:
+                return Optimizations.batching();
+            case DELAYING:
+                return Optimizations.delaying(delayParameters);
+            case PREDICTING:
+                return Optimizations.predicting(delayParameters);
+            default:
+                return null;
+        }
+    }
+
+    public static Bandwidth toBandwidth(BandwidthProperties properties) {
+        return Bandwidth.classic(properties.getCapacity(), Refill.greedy(properties.getRefillTokens(), Duration.ofSeconds(properties.getRefillPeriodSeconds())));
+    }
+
+    private static long getRefillNanos(Bandwidth bandwidth) {
+        return (long) Math.ceil((double) bandwidth.getRefillPeriodNanos() * bandwidth.getCapacity() / bandwidth.getRefillTokens());
     }
 }
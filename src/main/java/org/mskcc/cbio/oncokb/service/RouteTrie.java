@@ -0,0 +1,66 @@
+package org.mskcc.cbio.oncokb.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A prefix trie of routes, so a request uri is matched against all the routes in a single pass over the uri.
+ */
+final class RouteTrie {
+    private final Node root = new Node();
+
+    RouteTrie(Iterable<String> routes) {
+        for (String route : routes) {
+            add(route);
+        }
+    }
+
+    private void add(String route) {
+        Node node = root;
+        for (int i = 0; i < route.length(); i++) {
+            node = node.children.computeIfAbsent(route.charAt(i), key -> new Node());
+        }
+        node.route = route;
+    }
+
+    /**
+     * @return the longest route the uri starts with, null if there is none
+     */
+    String match(String uri) {
+        return match(uri, false);
+    }
+
+    /**
+     * Like {@link #match(String)}, but a route only matches a whole path segment: /api/v1/info matches /api/v1/info and
+     * /api/v1/info/, not /api/v1/infos. A route ending with a slash matches every path under it.
+     *
+     * @return the longest route matching the uri, null if there is none
+     */
+    String matchSegments(String uri) {
+        return match(uri, true);
+    }
+
+    private String match(String uri, boolean segments) {
+        if (uri == null) {
+            return null;
+        }
+        Node node = root;
+        String longestMatch = node.route;
+        for (int i = 0; i < uri.length() && node != null; i++) {
+            node = node.children.get(uri.charAt(i));
+            if (node != null && node.route != null && (!segments || isSegmentEnd(uri, i))) {
+                longestMatch = node.route;
+            }
+        }
+        return longestMatch;
+    }
+
+    private static boolean isSegmentEnd(String uri, int index) {
+        return index == uri.length() - 1 || uri.charAt(index) == '/' || uri.charAt(index + 1) == '/';
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private String route;
+    }
+}
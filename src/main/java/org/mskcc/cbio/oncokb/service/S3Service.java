@@ -2,6 +2,8 @@ package org.mskcc.cbio.oncokb.service;
 
 import java.io.File;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
@@ -15,7 +17,11 @@ import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
 @Service
 public class S3Service {
@@ -73,4 +79,47 @@ public class S3Service {
             return Optional.empty();
         }
     }
+
+    /**
+     * Get the metadata of an object from aws s3, like its ETag, without downloading it
+     * @param bucket s3 bucket name
+     * @param objectPath the path of the object
+     * @return the object metadata, empty if the object does not exist or cannot be read
+     */
+    public Optional<HeadObjectResponse> getObjectMetadata(String bucket, String objectPath){
+        try {
+            return Optional.of(s3Client.headObject(HeadObjectRequest.builder()
+                .bucket(bucket)
+                .key(objectPath)
+                .build()));
+        } catch (S3Exception e) {
+            if (e.statusCode() != 404) {
+                log.error(e.getMessage(), e);
+            }
+            return Optional.empty();
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * List the objects of aws s3 under a prefix
+     * @param bucket s3 bucket name
+     * @param prefix the path prefix of the objects
+     * @return the ETag of each object keyed by its path, empty if the objects cannot be listed
+     */
+    public Optional<Map<String, String>> listObjects(String bucket, String prefix){
+        try {
+            Map<String, String> objects = new HashMap<>();
+            s3Client.listObjectsV2Paginator(ListObjectsV2Request.builder()
+                .bucket(bucket)
+                .prefix(prefix)
+                .build()).contents().forEach(object -> objects.put(object.key(), object.eTag()));
+            return Optional.of(objects);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            return Optional.empty();
+        }
+    }
 }
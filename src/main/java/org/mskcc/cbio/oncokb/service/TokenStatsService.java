@@ -24,6 +24,13 @@ public interface TokenStatsService {
      */
     TokenStats save(TokenStats tokenStats);
 
+    /**
+     * Insert a list of tokenStats using JDBC batching. The tokens need to be persisted already.
+     *
+     * @param tokenStats the entities to insert.
+     */
+    void insertAll(List<TokenStats> tokenStats);
+
     /**
      * Get all the tokenStats.
      *
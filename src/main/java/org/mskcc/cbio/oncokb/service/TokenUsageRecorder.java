@@ -0,0 +1,288 @@
+package org.mskcc.cbio.oncokb.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.application.TokenStatsProperties;
+import org.mskcc.cbio.oncokb.domain.Token;
+import org.mskcc.cbio.oncokb.domain.TokenStats;
+import org.mskcc.cbio.oncokb.security.AuthoritiesConstants;
+import org.mskcc.cbio.oncokb.security.SecurityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Service;
+
+import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the token usage of proxied requests without touching the database on the request thread.
+ * <p>
+ * Usage is summed in memory per {@link TokenUsageBucket} (token, resource, ip and aggregation window) with striped
+ * counters. A single background writer persists every closed bucket as one {@link TokenStats} row whose usage count
+ * is the sum of the bucket, so a batch annotator sending thousands of requests a minute only produces a handful of rows.
+ * When the number of open buckets reaches the limit, usage of new buckets is dropped and counted instead of
+ * blocking the request. A batch that fails to persist is merged back into the open buckets and retried on the next flush.
+ */
+@Service
+public class TokenUsageRecorder implements DisposableBean {
+    private static final String IP_HEADER = "X-FORWARDED-FOR";
+
+    private final Logger log = LoggerFactory.getLogger(TokenUsageRecorder.class);
+
+    private final ApplicationProperties applicationProperties;
+
+    private final TokenService tokenService;
+
+    private final TokenStatsService tokenStatsService;
+
+    private final TokenStatsProperties properties;
+
+    private final UsageRouteMatcher usageRouteMatcher;
+
+    private final long windowMillis;
+
+    private final ConcurrentMap<TokenUsageBucket, LongAdder> buckets = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService writer;
+
+    private final Counter recordedCounter;
+
+    private final Counter droppedCounter;
+
+    private final Counter persistedCounter;
+
+    private final Counter droppedRowsCounter;
+
+    private final Timer lagTimer;
+
+    public TokenUsageRecorder(ApplicationProperties applicationProperties, TokenService tokenService, TokenStatsService tokenStatsService, UsageRouteMatcher usageRouteMatcher, MeterRegistry meterRegistry) {
+        this.applicationProperties = applicationProperties;
+        this.usageRouteMatcher = usageRouteMatcher;
+        this.tokenService = tokenService;
+        this.tokenStatsService = tokenStatsService;
+        this.properties = applicationProperties.getTokenStats();
+        this.windowMillis = TimeUnit.SECONDS.toMillis(properties.getAggregationWindowSeconds());
+
+        meterRegistry.gaugeMapSize("oncokb.token.stats.buckets", Collections.emptyList(), buckets);
+        this.recordedCounter = meterRegistry.counter("oncokb.token.stats.events", "result", "recorded");
+        this.droppedCounter = meterRegistry.counter("oncokb.token.stats.events", "result", "dropped");
+        this.persistedCounter = meterRegistry.counter("oncokb.token.stats.rows", "result", "persisted");
+        this.droppedRowsCounter = meterRegistry.counter("oncokb.token.stats.rows", "result", "dropped");
+        this.lagTimer = meterRegistry.timer("oncokb.token.stats.lag");
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oncokb-token-stats-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writer.scheduleWithFixedDelay(this::flushSafely, properties.getFlushIntervalMillis(), properties.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Capture the usage of the current request. Only requests authenticated with a token are recorded.
+     *
+     * @param request    the proxied request
+     * @param usageCount the number of usages this request counts for
+     */
+    public void record(HttpServletRequest request, int usageCount) {
+        if (Boolean.TRUE.equals(applicationProperties.getDbReadOnly())) {
+            return;
+        }
+        Optional<String> loginOptional = SecurityUtils.getCurrentUserLogin();
+        Optional<UUID> uuidOptional = SecurityUtils.getCurrentUserToken();
+        if (!loginOptional.isPresent() || !uuidOptional.isPresent() || SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.ADMIN)) {
+            return;
+        }
+        if (usageRouteMatcher.isWhitelisted(loginOptional.get())) {
+            return;
+        }
+
+        String ipAddress = request.getHeader(IP_HEADER);
+        if (ipAddress == null) {
+            ipAddress = Optional.ofNullable(request.getRemoteAddr()).orElse("");
+        }
+        long now = System.currentTimeMillis();
+        TokenUsageBucket bucket = new TokenUsageBucket(uuidOptional.get(), ipAddress, request.getMethod() + " " + request.getRequestURI(), now - now % windowMillis);
+        add(bucket, usageCount);
+    }
+
+    private void add(TokenUsageBucket bucket, int usageCount) {
+        LongAdder counter = buckets.get(bucket);
+        if (counter == null) {
+            if (buckets.size() >= properties.getMaxBuckets()) {
+                droppedCounter.increment();
+                return;
+            }
+            counter = buckets.computeIfAbsent(bucket, key -> new LongAdder());
+        }
+        counter.add(usageCount);
+        recordedCounter.increment();
+    }
+
+    private void flushSafely() {
+        try {
+            flush(false);
+        } catch (Exception e) {
+            log.error("Failed to persist token usage", e);
+        }
+    }
+
+    /**
+     * Persist the aggregated usage.
+     *
+     * @param all whether to persist the buckets of the current window as well. Otherwise, only the buckets closed
+     *            for at least one flush interval are persisted so late increments are not lost.
+     */
+    public void flush(boolean all) {
+        long cutoff = System.currentTimeMillis() - windowMillis - properties.getFlushIntervalMillis();
+        List<TokenUsageBucket> batch = new ArrayList<>(properties.getBatchSize());
+        List<Long> counts = new ArrayList<>(properties.getBatchSize());
+        for (TokenUsageBucket bucket : buckets.keySet()) {
+            if (!all && bucket.getWindowStart() > cutoff) {
+                continue;
+            }
+            LongAdder counter = buckets.remove(bucket);
+            if (counter == null) {
+                continue;
+            }
+            batch.add(bucket);
+            counts.add(counter.sum());
+            if (batch.size() >= properties.getBatchSize()) {
+                persistOrRequeue(batch, counts);
+                batch.clear();
+                counts.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            persistOrRequeue(batch, counts);
+        }
+    }
+
+    private void persistOrRequeue(List<TokenUsageBucket> batch, List<Long> counts) {
+        try {
+            persist(batch, counts);
+        } catch (Exception e) {
+            log.error("Failed to persist {} token usage buckets, they are retried on the next flush", batch.size(), e);
+            requeue(batch, counts);
+        }
+    }
+
+    /**
+     * Merge the counts back into the open buckets, the usage recorded since the batch was taken is kept as well.
+     */
+    private void requeue(List<TokenUsageBucket> batch, List<Long> counts) {
+        for (int i = 0; i < batch.size(); i++) {
+            TokenUsageBucket bucket = batch.get(i);
+            if (!buckets.containsKey(bucket) && buckets.size() >= properties.getMaxBuckets()) {
+                droppedRowsCounter.increment();
+                continue;
+            }
+            buckets.computeIfAbsent(bucket, key -> new LongAdder()).add(counts.get(i));
+        }
+    }
+
+    private void persist(List<TokenUsageBucket> batch, List<Long> counts) {
+        Map<UUID, Optional<Token>> tokens = new HashMap<>();
+        List<TokenStats> tokenStatsList = new ArrayList<>(batch.size());
+        Instant now = Instant.now();
+        for (int i = 0; i < batch.size(); i++) {
+            TokenUsageBucket bucket = batch.get(i);
+            Optional<Token> token = tokens.computeIfAbsent(bucket.getToken(), tokenService::findByToken);
+            if (token.isPresent()) {
+                TokenStats tokenStats = new TokenStats();
+                tokenStats.setToken(token.get());
+                tokenStats.setAccessIp(bucket.getAccessIp());
+                tokenStats.setResource(bucket.getResource());
+                tokenStats.setAccessTime(Instant.ofEpochMilli(bucket.getWindowStart()));
+                tokenStats.setUsageCount((int) Math.min(counts.get(i), Integer.MAX_VALUE));
+                tokenStatsList.add(tokenStats);
+            }
+        }
+        if (!tokenStatsList.isEmpty()) {
+            tokenStatsService.insertAll(tokenStatsList);
+            persistedCounter.increment(tokenStatsList.size());
+        }
+        for (TokenUsageBucket bucket : batch) {
+            lagTimer.record(Duration.between(Instant.ofEpochMilli(bucket.getWindowStart()), now));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush(true);
+        } catch (Exception e) {
+            log.error("Failed to persist token usage on shutdown", e);
+        }
+    }
+
+    /**
+     * The key usage is aggregated by.
+     */
+    public static final class TokenUsageBucket {
+        private final UUID token;
+        private final String accessIp;
+        private final String resource;
+        private final long windowStart;
+
+        public TokenUsageBucket(UUID token, String accessIp, String resource, long windowStart) {
+            this.token = token;
+            this.accessIp = accessIp;
+            this.resource = resource;
+            this.windowStart = windowStart;
+        }
+
+        public UUID getToken() {
+            return token;
+        }
+
+        public String getAccessIp() {
+            return accessIp;
+        }
+
+        public String getResource() {
+            return resource;
+        }
+
+        public long getWindowStart() {
+            return windowStart;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TokenUsageBucket)) {
+                return false;
+            }
+            TokenUsageBucket that = (TokenUsageBucket) o;
+            return windowStart == that.windowStart &&
+                token.equals(that.token) &&
+                accessIp.equals(that.accessIp) &&
+                resource.equals(that.resource);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(token, accessIp, resource, windowStart);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.mskcc.cbio.oncokb.service;
+
+import java.util.Arrays;
+
+/**
+ * A count based circuit breaker.
+ * <p>
+ * The circuit opens when the failure rate of the last {@code slidingWindowSize} calls reaches the threshold. While
+ * open, calls are rejected. After {@code openNanos}, a single trial call is let through: the circuit closes if it
+ * succeeds and opens again otherwise.
+ * <p>
+ * Each state transition starts a new epoch, and a call is granted in the epoch of the state it was let through. Only
+ * the results of the current epoch are counted, so a slow call which started before the circuit opened cannot decide
+ * the outcome of the trial.
+ */
+public class UpstreamCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureRateThreshold;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final boolean[] failures;
+
+    private State state = State.CLOSED;
+    private int position;
+    private int calls;
+    private int failureCount;
+    private long openedAt;
+    private long epoch;
+
+    public UpstreamCircuitBreaker(int failureRateThreshold, int slidingWindowSize, int minimumCalls, long openNanos) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = Math.min(minimumCalls, slidingWindowSize);
+        this.openNanos = openNanos;
+        this.failures = new boolean[slidingWindowSize];
+    }
+
+    /**
+     * @return the epoch the call is granted in, to pass to {@link #onResult(boolean, long, long)}, or -1 if the call is
+     * rejected
+     */
+    public synchronized long tryAcquire(long nanoTime) {
+        switch (state) {
+            case OPEN:
+                if (nanoTime - openedAt < openNanos) {
+                    return -1;
+                }
+                // The trial is the only call of the half open epoch
+                state = State.HALF_OPEN;
+                return ++epoch;
+            case HALF_OPEN:
+                return -1;
+            default:
+                return epoch;
+        }
+    }
+
+    /**
+     * @param permitEpoch the epoch returned by {@link #tryAcquire(long)} when the call was let through
+     */
+    public synchronized void onResult(boolean success, long permitEpoch, long nanoTime) {
+        if (permitEpoch != epoch) {
+            // The call started in an earlier state
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (success) {
+                reset();
+            } else {
+                open(nanoTime);
+            }
+            return;
+        }
+        if (calls == failures.length) {
+            if (failures[position]) {
+                failureCount--;
+            }
+        } else {
+            calls++;
+        }
+        failures[position] = !success;
+        if (!success) {
+            failureCount++;
+        }
+        position = (position + 1) % failures.length;
+        if (calls >= minimumCalls && failureCount * 100 >= failureRateThreshold * calls) {
+            open(nanoTime);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return the nanos before an open circuit lets a trial call through, 0 otherwise
+     */
+    public synchronized long getRemainingOpenNanos(long nanoTime) {
+        return state == State.OPEN ? Math.max(0, openNanos - (nanoTime - openedAt)) : 0;
+    }
+
+    private void open(long nanoTime) {
+        state = State.OPEN;
+        openedAt = nanoTime;
+        epoch++;
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        epoch++;
+        position = 0;
+        calls = 0;
+        failureCount = 0;
+        Arrays.fill(failures, false);
+    }
+}
@@ -0,0 +1,353 @@
+package org.mskcc.cbio.oncokb.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.application.ResilienceProperties;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Protects the proxy when oncokb core slows down or fails.
+ * <ul>
+ * <li>A circuit breaker per upstream (default and germline) rejects the calls right away while the upstream keeps failing.</li>
+ * <li>A bulkhead caps the concurrent data downloads, so they cannot take all the upstream connections and threads.</li>
+ * <li>Idempotent GETs of the hedging routes send a second request when the first one is slower than the p95 latency
+ * of the route, the first response wins and the other request is aborted. The latency is only recorded for the buffered calls of the route, so the
+ * data downloads and streamed responses do not inflate it.</li>
+ * </ul>
+ */
+@Component
+public class UpstreamResilience implements DisposableBean {
+    public static final String DATA_DOWNLOAD_PATH = "/api/private/utils/data/";
+
+    private final ResilienceProperties properties;
+
+    private final RouteTrie hedgingRoutes;
+
+    private final ApiProxyClientPool apiProxyClientPool;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, UpstreamCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Timer> latencyTimers = new ConcurrentHashMap<>();
+
+    // Keyed by hedging route
+    private final ConcurrentMap<String, Timer> hedgingLatencyTimers = new ConcurrentHashMap<>();
+
+    // Keyed by hedging route
+    private final ConcurrentMap<String, HedgingDelay> hedgingDelays = new ConcurrentHashMap<>();
+
+    private final Semaphore dataDownloads;
+
+    private final Counter dataDownloadRejections;
+
+    private final Counter hedgedCounter;
+
+    private final ThreadPoolTaskExecutor hedgingExecutor;
+
+    public UpstreamResilience(ApplicationProperties applicationProperties, ApiProxyClientPool apiProxyClientPool, MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getResilience();
+        this.hedgingRoutes = new RouteTrie(properties.getHedgingRoutes());
+        this.apiProxyClientPool = apiProxyClientPool;
+        this.meterRegistry = meterRegistry;
+        this.dataDownloads = new Semaphore(properties.getDataDownloadMaxConcurrent());
+        meterRegistry.gauge("oncokb.proxy.data.downloads", dataDownloads, permits -> properties.getDataDownloadMaxConcurrent() - permits.availablePermits());
+        this.dataDownloadRejections = meterRegistry.counter("oncokb.proxy.rejections", "route", DATA_DOWNLOAD_PATH, "reason", "bulkhead");
+        this.hedgedCounter = meterRegistry.counter("oncokb.proxy.hedged.requests");
+
+        if (properties.isHedgingEnabled()) {
+            this.hedgingExecutor = new ThreadPoolTaskExecutor();
+            this.hedgingExecutor.setCorePoolSize(properties.getHedgingThreads());
+            this.hedgingExecutor.setMaxPoolSize(properties.getHedgingThreads());
+            this.hedgingExecutor.setQueueCapacity(0);
+            this.hedgingExecutor.setAllowCoreThreadTimeOut(true);
+            this.hedgingExecutor.setThreadNamePrefix("oncokb-hedging-");
+            this.hedgingExecutor.initialize();
+        } else {
+            this.hedgingExecutor = null;
+        }
+    }
+
+    /**
+     * Acquire a permit of the circuit breaker of the upstream. The permit has to be completed with the outcome of the call.
+     *
+     * @throws UpstreamUnavailableException if the circuit is open
+     */
+    public Permit acquire(URI uri) {
+        String upstream = apiProxyClientPool.getUpstreamName(uri);
+        Timer latencyTimer = getLatencyTimer(upstream);
+        if (!properties.isCircuitBreakerEnabled()) {
+            return new Permit(null, -1, latencyTimer);
+        }
+        UpstreamCircuitBreaker circuitBreaker = getCircuitBreaker(upstream);
+        long now = System.nanoTime();
+        long epoch = circuitBreaker.tryAcquire(now);
+        if (epoch < 0) {
+            meterRegistry.counter("oncokb.proxy.circuit.rejections", "upstream", upstream).increment();
+            long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(circuitBreaker.getRemainingOpenNanos(now)));
+            throw new UpstreamUnavailableException("OncoKB core is unavailable, please retry later", retryAfterSeconds);
+        }
+        return new Permit(circuitBreaker, epoch, latencyTimer);
+    }
+
+    public boolean isDataDownload(String requestUri) {
+        return requestUri.startsWith(DATA_DOWNLOAD_PATH);
+    }
+
+    /**
+     * @throws UpstreamUnavailableException if too many data downloads are in progress
+     */
+    public void acquireDataDownload() {
+        if (!dataDownloads.tryAcquire()) {
+            dataDownloadRejections.increment();
+            throw new UpstreamUnavailableException("Too many data downloads are in progress, please retry later", 60);
+        }
+    }
+
+    public void releaseDataDownload() {
+        dataDownloads.release();
+    }
+
+    /**
+     * @return the hedging route of the request, null if the request is not hedged
+     */
+    public String getHedgingRoute(String requestUri) {
+        if (hedgingExecutor == null) {
+            return null;
+        }
+        return hedgingRoutes.matchSegments(requestUri);
+    }
+
+    /**
+     * Execute the call, and execute it a second time if it does not complete within the hedging delay of the route.
+     *
+     * @return the first successful response
+     */
+    public ProxyResponse hedge(String hedgingRoute, HedgedCall call) throws IOException {
+        Timer latencyTimer = getHedgingLatencyTimer(hedgingRoute);
+        HedgedCall timedCall = onRequest -> {
+            long start = System.nanoTime();
+            ProxyResponse response = call.execute(onRequest);
+            latencyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return response;
+        };
+        Attempt primaryAttempt = new Attempt();
+        CompletableFuture<ProxyResponse> primary = submit(timedCall, primaryAttempt);
+        if (primary == null) {
+            return timedCall.execute(primaryAttempt);
+        }
+        long delayMillis = hedgingDelays.computeIfAbsent(hedgingRoute, key -> new HedgingDelay()).getMillis(latencyTimer);
+        try {
+            return primary.get(delayMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Slower than usual, send the second request below
+        } catch (ExecutionException e) {
+            throw toIOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for oncokb core", e);
+        }
+
+        Attempt secondaryAttempt = new Attempt();
+        CompletableFuture<ProxyResponse> secondary = submit(timedCall, secondaryAttempt);
+        CompletableFuture<ProxyResponse> first = primary;
+        if (secondary != null) {
+            hedgedCounter.increment();
+            first = firstSuccessful(primary, primaryAttempt, secondary, secondaryAttempt);
+        }
+        try {
+            return first.get();
+        } catch (ExecutionException e) {
+            throw toIOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for oncokb core", e);
+        }
+    }
+
+    private CompletableFuture<ProxyResponse> submit(HedgedCall call, Attempt attempt) {
+        CompletableFuture<ProxyResponse> future = new CompletableFuture<>();
+        try {
+            hedgingExecutor.execute(() -> {
+                try {
+                    future.complete(call.execute(attempt));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            return null;
+        }
+        return future;
+    }
+
+    /**
+     * @return the first successful response, the request of the other attempt is then aborted
+     */
+    private CompletableFuture<ProxyResponse> firstSuccessful(CompletableFuture<ProxyResponse> primary, Attempt primaryAttempt, CompletableFuture<ProxyResponse> secondary, Attempt secondaryAttempt) {
+        CompletableFuture<ProxyResponse> first = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        primary.whenComplete((response, error) -> onAttemptComplete(first, failures, response, error, secondaryAttempt));
+        secondary.whenComplete((response, error) -> onAttemptComplete(first, failures, response, error, primaryAttempt));
+        return first;
+    }
+
+    private void onAttemptComplete(CompletableFuture<ProxyResponse> first, AtomicInteger failures, ProxyResponse response, Throwable error, Attempt otherAttempt) {
+        if (error == null) {
+            // The other request is aborted before the response is returned
+            if (!first.isDone()) {
+                otherAttempt.cancel();
+            }
+            first.complete(response);
+        } else if (failures.incrementAndGet() == 2) {
+            first.completeExceptionally(error);
+        }
+    }
+
+    private IOException toIOException(Throwable throwable) {
+        if (throwable instanceof IOException) {
+            return (IOException) throwable;
+        }
+        if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        }
+        return new IOException(throwable);
+    }
+
+    private UpstreamCircuitBreaker getCircuitBreaker(String upstream) {
+        return circuitBreakers.computeIfAbsent(upstream, key -> {
+            UpstreamCircuitBreaker circuitBreaker = new UpstreamCircuitBreaker(
+                properties.getFailureRateThreshold(),
+                properties.getSlidingWindowSize(),
+                properties.getMinimumCalls(),
+                TimeUnit.SECONDS.toNanos(properties.getOpenSeconds())
+            );
+            meterRegistry.gauge("oncokb.proxy.circuit.state", Tags.of("upstream", key), circuitBreaker, breaker -> breaker.getState().ordinal());
+            return circuitBreaker;
+        });
+    }
+
+    private Timer getLatencyTimer(String upstream) {
+        return latencyTimers.computeIfAbsent(upstream, key -> Timer.builder("oncokb.proxy.upstream.latency")
+            .tag("upstream", key)
+            .publishPercentiles(0.95)
+            .register(meterRegistry));
+    }
+
+    private Timer getHedgingLatencyTimer(String hedgingRoute) {
+        return hedgingLatencyTimers.computeIfAbsent(hedgingRoute, key -> Timer.builder("oncokb.proxy.hedging.latency")
+            .tag("route", key)
+            .publishPercentiles(0.95)
+            .register(meterRegistry));
+    }
+
+    @Override
+    public void destroy() {
+        if (hedgingExecutor != null) {
+            hedgingExecutor.shutdown();
+        }
+    }
+
+    /**
+     * The p95 latency of a hedging route, refreshed at most once a second since taking a snapshot of the timer is not free.
+     */
+    private class HedgingDelay {
+        private volatile long millis = properties.getHedgingMinDelayMillis();
+        private volatile long refreshedAt;
+
+        private long getMillis(Timer timer) {
+            long now = System.nanoTime();
+            if (now - refreshedAt > TimeUnit.SECONDS.toNanos(1)) {
+                refreshedAt = now;
+                long p95 = 0;
+                for (ValueAtPercentile percentile : timer.takeSnapshot().percentileValues()) {
+                    p95 = (long) percentile.value(TimeUnit.MILLISECONDS);
+                }
+                millis = Math.max(properties.getHedgingMinDelayMillis(), p95);
+            }
+            return millis;
+        }
+    }
+
+    /**
+     * A hedged call to an upstream. It registers its upstream request, so the request can be aborted once the other
+     * call won.
+     */
+    @FunctionalInterface
+    public interface HedgedCall {
+        ProxyResponse execute(Consumer<HttpUriRequest> onRequest) throws IOException;
+    }
+
+    private static class Attempt implements Consumer<HttpUriRequest> {
+        private volatile HttpUriRequest request;
+        private volatile boolean cancelled;
+
+        @Override
+        public void accept(HttpUriRequest request) {
+            this.request = request;
+            if (cancelled) {
+                request.abort();
+            }
+        }
+
+        private void cancel() {
+            cancelled = true;
+            HttpUriRequest currentRequest = request;
+            if (currentRequest != null) {
+                currentRequest.abort();
+            }
+        }
+    }
+
+    /**
+     * A call to an upstream, recording its latency and its outcome in the circuit breaker.
+     */
+    public static class Permit {
+        private final UpstreamCircuitBreaker circuitBreaker;
+        private final long epoch;
+        private final Timer latencyTimer;
+        private final long start = System.nanoTime();
+        private boolean completed;
+
+        private Permit(UpstreamCircuitBreaker circuitBreaker, long epoch, Timer latencyTimer) {
+            this.circuitBreaker = circuitBreaker;
+            this.epoch = epoch;
+            this.latencyTimer = latencyTimer;
+        }
+
+        /**
+         * @param success false if the upstream failed or answered with a server error
+         */
+        public void complete(boolean success) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            long now = System.nanoTime();
+            latencyTimer.record(now - start, TimeUnit.NANOSECONDS);
+            if (circuitBreaker != null) {
+                circuitBreaker.onResult(success, epoch, now);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.mskcc.cbio.oncokb.service;
+
+import java.util.List;
+
+/**
+ * The yearly, monthly and daily usage of a set of usage summaries.
+ */
+public final class UsageData {
+    private final UsageMatrix year;
+
+    private final UsageMatrix month;
+
+    private final UsageMatrix day;
+
+    private UsageData(UsageMatrix year, UsageMatrix month, UsageMatrix day) {
+        this.year = year;
+        this.month = month;
+        this.day = day;
+    }
+
+    public static Builder builder(UsageDictionary users, UsageDictionary endpoints) {
+        return new Builder(users, endpoints);
+    }
+
+    /**
+     * Merge the usage data built with the same dictionaries.
+     */
+    public static UsageData merge(List<UsageData> parts, UsageDictionary users, UsageDictionary endpoints) {
+        Builder builder = builder(users, endpoints);
+        for (UsageData part : parts) {
+            builder.getYear().addAll(part.getYear());
+            builder.getMonth().addAll(part.getMonth());
+            builder.getDay().addAll(part.getDay());
+        }
+        return builder.build();
+    }
+
+    public UsageMatrix getYear() {
+        return year;
+    }
+
+    public UsageMatrix getMonth() {
+        return month;
+    }
+
+    public UsageMatrix getDay() {
+        return day;
+    }
+
+    public long getEstimatedBytes() {
+        return year.getEstimatedBytes() + month.getEstimatedBytes() + day.getEstimatedBytes();
+    }
+
+    public static class Builder {
+        private final UsageMatrix.Builder year;
+        private final UsageMatrix.Builder month;
+        private final UsageMatrix.Builder day;
+
+        private Builder(UsageDictionary users, UsageDictionary endpoints) {
+            this.year = UsageMatrix.builder(UsageMatrix.Period.YEAR, users, endpoints);
+            this.month = UsageMatrix.builder(UsageMatrix.Period.MONTH, users, endpoints);
+            this.day = UsageMatrix.builder(UsageMatrix.Period.DAY, users, endpoints);
+        }
+
+        public UsageMatrix.Builder getYear() {
+            return year;
+        }
+
+        public UsageMatrix.Builder getMonth() {
+            return month;
+        }
+
+        public UsageMatrix.Builder getDay() {
+            return day;
+        }
+
+        public UsageData build() {
+            return new UsageData(year.build(), month.build(), day.build());
+        }
+    }
+}
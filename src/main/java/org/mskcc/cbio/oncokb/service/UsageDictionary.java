@@ -0,0 +1,56 @@
+package org.mskcc.cbio.oncokb.service;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps the users and the endpoints of the usage summaries to dense int ids, so each distinct string is kept once.
+ * Ids are never removed, the dictionary only grows with new users and endpoints.
+ */
+public final class UsageDictionary {
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    // Written under the lock before the id is published in the map
+    private volatile String[] values = new String[64];
+
+    private int size;
+
+    /**
+     * @return the id of the value, a new one if the value is not known yet
+     */
+    public int intern(String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size] = value;
+            ids.put(value, size);
+            return size++;
+        }
+    }
+
+    /**
+     * @return the id of the value, -1 if the value is not known
+     */
+    public int getId(String value) {
+        Integer id = ids.get(value);
+        return id == null ? -1 : id;
+    }
+
+    public String get(int id) {
+        return values[id];
+    }
+
+    public int size() {
+        return ids.size();
+    }
+}
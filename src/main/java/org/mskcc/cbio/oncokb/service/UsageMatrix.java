@@ -0,0 +1,410 @@
+package org.mskcc.cbio.oncokb.service;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * The usage counts of one period granularity (day, month or year), stored in sorted primitive arrays.
+ * <p>
+ * A row is a user, a period, an endpoint and a count. The user and the endpoint are ids of a {@link UsageDictionary}
+ * and the period is encoded as an int, the three of them are packed in one long key. Rows are sorted by key, so the
+ * rows of a user are contiguous and found with a binary search. A row takes 16 bytes, where nested maps take a boxed
+ * count, a map entry and the period and endpoint strings.
+ * <p>
+ * The rows are also indexed by endpoint, so the usage of an endpoint is read without scanning the other rows. The
+ * endpoints are kept sorted by path to look up all the endpoints under a prefix, such as {@code /api/v1/annotate/}.
+ */
+public final class UsageMatrix {
+    private static final int ENDPOINT_BITS = 20;
+    private static final int PERIOD_BITS = 20;
+    private static final int USER_SHIFT = ENDPOINT_BITS + PERIOD_BITS;
+    private static final long ENDPOINT_MASK = (1L << ENDPOINT_BITS) - 1;
+    private static final long PERIOD_MASK = (1L << PERIOD_BITS) - 1;
+    private static final int MAX_USERS = 1 << (Long.SIZE - 1 - USER_SHIFT);
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    public enum Period {
+        // Days since the epoch
+        DAY {
+            @Override
+            int encode(String key) {
+                return (int) LocalDate.parse(key).toEpochDay();
+            }
+
+            @Override
+            String decode(int code) {
+                return LocalDate.ofEpochDay(code).toString();
+            }
+        },
+        // Months since year 0
+        MONTH {
+            @Override
+            int encode(String key) {
+                YearMonth yearMonth = YearMonth.parse(key);
+                return yearMonth.getYear() * 12 + yearMonth.getMonthValue() - 1;
+            }
+
+            @Override
+            String decode(int code) {
+                return YearMonth.of(code / 12, code % 12 + 1).toString();
+            }
+        },
+        YEAR {
+            @Override
+            int encode(String key) {
+                return Integer.parseInt(key);
+            }
+
+            @Override
+            String decode(int code) {
+                return String.valueOf(code);
+            }
+        };
+
+        abstract int encode(String key);
+
+        abstract String decode(int code);
+    }
+
+    private final Period period;
+
+    private final UsageDictionary users;
+
+    private final UsageDictionary endpoints;
+
+    private final long[] keys;
+
+    private final long[] counts;
+
+    // The row indexes grouped by endpoint id, in key order within an endpoint
+    private final int[] endpointRows;
+
+    // The rows of the endpoint id i are endpointRows[endpointStarts[i]] to endpointRows[endpointStarts[i + 1] - 1]
+    private final int[] endpointStarts;
+
+    // The ids of the endpoints with usage, sorted by path
+    private final int[] sortedEndpointIds;
+
+    private UsageMatrix(Period period, UsageDictionary users, UsageDictionary endpoints, long[] keys, long[] counts) {
+        this.period = period;
+        this.users = users;
+        this.endpoints = endpoints;
+        this.keys = keys;
+        this.counts = counts;
+
+        int endpointCount = 0;
+        for (long key : keys) {
+            endpointCount = Math.max(endpointCount, endpointOf(key) + 1);
+        }
+        this.endpointStarts = new int[endpointCount + 1];
+        for (long key : keys) {
+            endpointStarts[endpointOf(key) + 1]++;
+        }
+        int presentEndpoints = 0;
+        for (int i = 0; i < endpointCount; i++) {
+            if (endpointStarts[i + 1] > 0) {
+                presentEndpoints++;
+            }
+            endpointStarts[i + 1] += endpointStarts[i];
+        }
+        this.endpointRows = new int[keys.length];
+        int[] next = Arrays.copyOf(endpointStarts, endpointCount);
+        for (int i = 0; i < keys.length; i++) {
+            endpointRows[next[endpointOf(keys[i])]++] = i;
+        }
+        Integer[] endpointIds = new Integer[presentEndpoints];
+        for (int i = 0, j = 0; i < endpointCount; i++) {
+            if (endpointStarts[i] < endpointStarts[i + 1]) {
+                endpointIds[j++] = i;
+            }
+        }
+        Arrays.sort(endpointIds, Comparator.comparing(endpoints::get));
+        this.sortedEndpointIds = new int[presentEndpoints];
+        for (int i = 0; i < presentEndpoints; i++) {
+            sortedEndpointIds[i] = endpointIds[i];
+        }
+    }
+
+    public static Builder builder(Period period, UsageDictionary users, UsageDictionary endpoints) {
+        return new Builder(period, users, endpoints);
+    }
+
+    public Period getPeriod() {
+        return period;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return the approximate heap taken by the rows and the endpoint index, the dictionaries are shared and not
+     * included
+     */
+    public long getEstimatedBytes() {
+        return (2L * Long.BYTES + Integer.BYTES) * keys.length
+            + (long) Integer.BYTES * (endpointStarts.length + sortedEndpointIds.length);
+    }
+
+    public boolean hasUser(String user) {
+        int userId = users.getId(user);
+        return userId >= 0 && getUserStart(userId) < getUserStart(userId + 1);
+    }
+
+    /**
+     * @return the users with usage, in id order
+     */
+    public Set<String> getUsers() {
+        Set<String> result = new LinkedHashSet<>();
+        int previousUserId = -1;
+        for (long key : keys) {
+            int userId = userOf(key);
+            if (userId != previousUserId) {
+                result.add(users.get(userId));
+                previousUserId = userId;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the usage of the user, keyed by period then endpoint
+     */
+    public Map<String, Map<String, Long>> getUsage(String user) {
+        Map<String, Map<String, Long>> usage = new HashMap<>();
+        int userId = users.getId(user);
+        if (userId < 0) {
+            return usage;
+        }
+        for (int i = getUserStart(userId), end = getUserStart(userId + 1); i < end; i++) {
+            usage.computeIfAbsent(period.decode(periodOf(keys[i])), key -> new HashMap<>())
+                .put(endpoints.get(endpointOf(keys[i])), counts[i]);
+        }
+        return usage;
+    }
+
+    /**
+     * @return the endpoints with usage starting with the prefix, sorted by path
+     */
+    public List<String> getEndpoints(String prefix) {
+        List<String> result = new ArrayList<>();
+        int low = 0;
+        int high = sortedEndpointIds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (endpoints.get(sortedEndpointIds[mid]).compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < sortedEndpointIds.length && endpoints.get(sortedEndpointIds[i]).startsWith(prefix); i++) {
+            result.add(endpoints.get(sortedEndpointIds[i]));
+        }
+        return result;
+    }
+
+    /**
+     * @return the users with usage of the endpoint
+     */
+    public Set<String> getUsers(String endpoint) {
+        return getUsers(Collections.singletonList(endpoint));
+    }
+
+    /**
+     * @return the users with usage of any of the endpoints
+     */
+    public Set<String> getUsers(Collection<String> endpointsToFind) {
+        Set<String> result = new LinkedHashSet<>();
+        for (String endpoint : endpointsToFind) {
+            int endpointId = endpoints.getId(endpoint);
+            for (int i = getEndpointStart(endpointId), end = getEndpointStart(endpointId + 1); i < end; i++) {
+                result.add(users.get(userOf(keys[endpointRows[i]])));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param userFilter the users to include, null for all
+     * @return the usage of the endpoint, keyed by period then user
+     */
+    public Map<String, Map<String, Long>> getEndpointUsage(String endpoint, Set<String> userFilter) {
+        return getEndpointUsage(Collections.singletonList(endpoint), userFilter);
+    }
+
+    /**
+     * @param userFilter the users to include, null for all
+     * @return the usage summed over the endpoints, keyed by period then user
+     */
+    public Map<String, Map<String, Long>> getEndpointUsage(Collection<String> endpointsToFind, Set<String> userFilter) {
+        Map<String, Map<String, Long>> usage = new HashMap<>();
+        for (String endpoint : endpointsToFind) {
+            int endpointId = endpoints.getId(endpoint);
+            for (int i = getEndpointStart(endpointId), end = getEndpointStart(endpointId + 1); i < end; i++) {
+                int row = endpointRows[i];
+                String user = users.get(userOf(keys[row]));
+                if (userFilter == null || userFilter.contains(user)) {
+                    usage.computeIfAbsent(period.decode(periodOf(keys[row])), key -> new HashMap<>())
+                        .merge(user, counts[row], Long::sum);
+                }
+            }
+        }
+        return usage;
+    }
+
+    // An unknown endpoint id has no rows
+    private int getEndpointStart(int endpointId) {
+        if (endpointId < 0) {
+            return 0;
+        }
+        return endpointStarts[Math.min(endpointId, endpointStarts.length - 1)];
+    }
+
+    private int getUserStart(int userId) {
+        long target = (long) userId << USER_SHIFT;
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static long pack(int userId, int periodCode, int endpointId) {
+        if (userId >= MAX_USERS || endpointId > ENDPOINT_MASK || periodCode < 0 || periodCode > PERIOD_MASK) {
+            throw new IllegalArgumentException("The usage row cannot be packed: user " + userId + ", period " + periodCode + ", endpoint " + endpointId);
+        }
+        return (long) userId << USER_SHIFT | (long) periodCode << ENDPOINT_BITS | endpointId;
+    }
+
+    private static int userOf(long key) {
+        return (int) (key >>> USER_SHIFT);
+    }
+
+    private static int periodOf(long key) {
+        return (int) (key >>> ENDPOINT_BITS & PERIOD_MASK);
+    }
+
+    private static int endpointOf(long key) {
+        return (int) (key & ENDPOINT_MASK);
+    }
+
+    public static class Builder {
+        private final Period period;
+        private final UsageDictionary users;
+        private final UsageDictionary endpoints;
+        private long[] keys = new long[16];
+        private long[] counts = new long[16];
+        private int size;
+
+        private Builder(Period period, UsageDictionary users, UsageDictionary endpoints) {
+            this.period = period;
+            this.users = users;
+            this.endpoints = endpoints;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the period key is not a valid date of the granularity
+         */
+        public Builder add(String user, String periodKey, String endpoint, long count) {
+            int periodCode;
+            try {
+                periodCode = period.encode(periodKey);
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + period.name().toLowerCase() + " " + periodKey, e);
+            }
+            add(pack(users.intern(user), periodCode, endpoints.intern(endpoint)), count);
+            return this;
+        }
+
+        /**
+         * Add the rows of a matrix built with the same dictionaries.
+         */
+        public Builder addAll(UsageMatrix matrix) {
+            for (int i = 0; i < matrix.keys.length; i++) {
+                add(matrix.keys[i], matrix.counts[i]);
+            }
+            return this;
+        }
+
+        private void add(long key, long count) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            keys[size] = key;
+            counts[size] = count;
+            size++;
+        }
+
+        /**
+         * Sort the rows. The counts of the same user, period and endpoint are summed.
+         */
+        public UsageMatrix build() {
+            long[] sortedKeys = Arrays.copyOf(keys, size);
+            long[] sortedCounts = Arrays.copyOf(counts, size);
+            sort(sortedKeys, sortedCounts, 0, size - 1);
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (distinct > 0 && sortedKeys[distinct - 1] == sortedKeys[i]) {
+                    sortedCounts[distinct - 1] += sortedCounts[i];
+                } else {
+                    sortedKeys[distinct] = sortedKeys[i];
+                    sortedCounts[distinct] = sortedCounts[i];
+                    distinct++;
+                }
+            }
+            return new UsageMatrix(period, users, endpoints, Arrays.copyOf(sortedKeys, distinct), Arrays.copyOf(sortedCounts, distinct));
+        }
+
+        // Quicksort of the keys, moving the counts along
+        private static void sort(long[] keys, long[] counts, int low, int high) {
+            while (high - low >= INSERTION_SORT_THRESHOLD) {
+                long pivot = keys[(low + high) >>> 1];
+                int i = low;
+                int j = high;
+                while (i <= j) {
+                    while (keys[i] < pivot) {
+                        i++;
+                    }
+                    while (keys[j] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(keys, counts, i++, j--);
+                    }
+                }
+                // Recurse into the smaller part to bound the stack depth
+                if (j - low < high - i) {
+                    sort(keys, counts, low, j);
+                    low = i;
+                } else {
+                    sort(keys, counts, i, high);
+                    high = j;
+                }
+            }
+            for (int i = low + 1; i <= high; i++) {
+                for (int j = i; j > low && keys[j - 1] > keys[j]; j--) {
+                    swap(keys, counts, j - 1, j);
+                }
+            }
+        }
+
+        private static void swap(long[] keys, long[] counts, int i, int j) {
+            long key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+            long count = counts[i];
+            counts[i] = counts[j];
+            counts[j] = count;
+        }
+    }
+}
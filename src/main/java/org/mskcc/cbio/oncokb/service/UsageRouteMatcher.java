@@ -0,0 +1,70 @@
+package org.mskcc.cbio.oncokb.service;
+
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Classifies the proxied requests by the {@code application.token-usage-check} routes and the logins by the
+ * {@code application.token-usage-check-whitelist}.
+ * <p>
+ * The routes are compiled into a {@link RouteTrie} so a request uri is classified in a single pass over the uri. The
+ * compiled routes are rebuilt whenever the properties change.
+ */
+@Component
+public class UsageRouteMatcher {
+
+    private final ApplicationProperties applicationProperties;
+
+    private volatile CompiledRoutes compiledRoutes;
+
+    public UsageRouteMatcher(ApplicationProperties applicationProperties) {
+        this.applicationProperties = applicationProperties;
+    }
+
+    /**
+     * @param uri the request uri
+     * @return the longest token usage check route the uri starts with, empty if the usage of the uri is not checked
+     */
+    public Optional<String> getUsageBucket(String uri) {
+        return Optional.ofNullable(getCompiledRoutes().routes.match(uri));
+    }
+
+    public boolean isUsageChecked(String uri) {
+        return getUsageBucket(uri).isPresent();
+    }
+
+    public boolean isWhitelisted(String login) {
+        return getCompiledRoutes().whitelist.contains(login);
+    }
+
+    private CompiledRoutes getCompiledRoutes() {
+        String tokenUsageCheck = applicationProperties.getTokenUsageCheck();
+        String tokenUsageCheckWhitelist = applicationProperties.getTokenUsageCheckWhitelist();
+        CompiledRoutes current = compiledRoutes;
+        if (current == null || !Objects.equals(current.tokenUsageCheck, tokenUsageCheck) || !Objects.equals(current.tokenUsageCheckWhitelist, tokenUsageCheckWhitelist)) {
+            current = new CompiledRoutes(tokenUsageCheck, tokenUsageCheckWhitelist, applicationProperties.getTokenUsageCheckWhitelists());
+            compiledRoutes = current;
+        }
+        return current;
+    }
+
+    private static final class CompiledRoutes {
+        private final String tokenUsageCheck;
+        private final String tokenUsageCheckWhitelist;
+        private final RouteTrie routes;
+        private final Set<String> whitelist;
+
+        private CompiledRoutes(String tokenUsageCheck, String tokenUsageCheckWhitelist, List<String> whitelist) {
+            this.tokenUsageCheck = tokenUsageCheck;
+            this.tokenUsageCheckWhitelist = tokenUsageCheckWhitelist;
+            this.whitelist = Collections.unmodifiableSet(new HashSet<>(whitelist));
+            List<String> routeList = new ArrayList<>();
+            if (tokenUsageCheck != null) {
+                Arrays.stream(tokenUsageCheck.split(",")).map(String::trim).filter(route -> !route.isEmpty()).forEach(routeList::add);
+            }
+            this.routes = new RouteTrie(routeList);
+        }
+    }
+}
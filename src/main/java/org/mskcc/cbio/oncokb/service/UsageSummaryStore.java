@@ -0,0 +1,460 @@
+package org.mskcc.cbio.oncokb.service;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.mskcc.cbio.oncokb.config.Constants;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.application.UsageSummaryCacheProperties;
+import org.mskcc.cbio.oncokb.domain.enumeration.FileExtension;
+import org.mskcc.cbio.oncokb.util.TimeUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.mskcc.cbio.oncokb.config.Constants.*;
+
+/**
+ * Keeps the usage summaries stored on S3 in memory, as compact {@link UsageData}.
+ * <p>
+ * The summaries of the past periods do not change once the usage analysis cron job has written them, so each file is
+ * only downloaded and parsed once. The summaries of the current and previous period, which the cron job still updates,
+ * are revalidated in the background against their S3 ETag and downloaded again only when they changed.
+ * <p>
+ * The files which are not loaded yet are listed once per prefix, then downloaded and parsed concurrently on a bounded
+ * pool. The files are merged into one {@link UsageData} per summary type, which is rebuilt only when a file changed.
+ * The time of each phase (list, fetch, parse and merge) is recorded.
+ */
+@Service
+public class UsageSummaryStore implements DisposableBean {
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final DateTimeFormatter YEAR_FORMATTER = DateTimeFormatter.ofPattern("yyyy");
+    private static final int YEARS_TO_GO_BACK = 4;
+    // The cron job still writes the summary of the previous period after the period ends
+    private static final int MUTABLE_PERIODS = 2;
+    // The resource summaries are not per user, their usage is stored under this user
+    public static final String RESOURCE_USER = "";
+
+    private final Logger log = LoggerFactory.getLogger(UsageSummaryStore.class);
+
+    private final S3Service s3Service;
+
+    private final Clock clock;
+
+    private final UsageSummaryCacheProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, CachedSummary> summaries = new ConcurrentHashMap<>();
+
+    private final UsageDictionary users = new UsageDictionary();
+
+    private final UsageDictionary endpoints = new UsageDictionary();
+
+    // Keyed by the year file prefix
+    private final ConcurrentMap<String, MergedUsage> mergedUsages = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean refreshStarted = new AtomicBoolean();
+
+    // The summaries being downloaded, so concurrent requests share the download
+    private final ConcurrentMap<String, CompletableFuture<CachedSummary>> loading = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService refresher;
+
+    private final ExecutorService loader;
+
+    private final Timer listTimer;
+
+    private final Timer fetchTimer;
+
+    private final Timer parseTimer;
+
+    private final Timer mergeTimer;
+
+    public UsageSummaryStore(S3Service s3Service, Clock clock, ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.s3Service = s3Service;
+        this.clock = clock;
+        this.properties = applicationProperties.getUsageSummaryCache();
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gaugeMapSize("oncokb.usage.summary.files", Collections.emptyList(), summaries);
+        meterRegistry.gauge("oncokb.usage.summary.bytes", mergedUsages, merged -> merged.values().stream()
+            .mapToLong(mergedUsage -> mergedUsage.getUsageData().getEstimatedBytes())
+            .sum());
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oncokb-usage-summary-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger loaderThreadCount = new AtomicInteger();
+        this.loader = Executors.newFixedThreadPool(properties.getLoaderThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "oncokb-usage-summary-loader-" + loaderThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.listTimer = meterRegistry.timer("oncokb.usage.summary.load", "phase", "list");
+        this.fetchTimer = meterRegistry.timer("oncokb.usage.summary.load", "phase", "fetch");
+        this.parseTimer = meterRegistry.timer("oncokb.usage.summary.load", "phase", "parse");
+        this.mergeTimer = meterRegistry.timer("oncokb.usage.summary.load", "phase", "merge");
+    }
+
+    /**
+     * Get the usage of each user over the last three years, by day and month, and over the last four years, by year.
+     */
+    public UsageData getUserUsage() {
+        return getUsage(YEAR_USERS_USAGE_SUMMARY_FILE_PREFIX, MONTH_USERS_USAGE_SUMMARY_FILE_PREFIX);
+    }
+
+    /**
+     * Get the usage of the resources over the same periods as {@link #getUserUsage()}, under the {@link #RESOURCE_USER}.
+     */
+    public UsageData getResourceUsage() {
+        return getUsage(YEAR_RESOURCES_USAGE_SUMMARY_FILE_PREFIX, MONTH_RESOURCES_USAGE_SUMMARY_FILE_PREFIX);
+    }
+
+    private UsageData getUsage(String yearFilePrefix, String monthFilePrefix) {
+        startRefresh();
+        List<CachedSummary> parts = new ArrayList<>();
+        parts.addAll(getSummaries(yearFilePrefix, getYears()));
+        parts.addAll(getSummaries(monthFilePrefix, getMonths()));
+        MergedUsage mergedUsage = mergedUsages.get(yearFilePrefix);
+        // The parts are compared by identity, a changed file is a new part
+        if (mergedUsage != null && mergedUsage.getParts().equals(parts)) {
+            return mergedUsage.getUsageData();
+        }
+        UsageData usageData = mergeTimer.record(() -> UsageData.merge(
+            parts.stream().map(CachedSummary::getUsage).collect(Collectors.toList()), users, endpoints
+        ));
+        mergedUsages.put(yearFilePrefix, new MergedUsage(parts, usageData));
+        return usageData;
+    }
+
+    /**
+     * @return the existing summaries of the periods, in period order
+     */
+    private List<CachedSummary> getSummaries(String filePrefix, List<String> periods) {
+        long now = System.currentTimeMillis();
+        List<String> periodsToLoad = new ArrayList<>();
+        for (String period : periods) {
+            CachedSummary cached = summaries.get(getObjectPath(filePrefix, period));
+            if (cached == null || cached.getUsage() == null
+                && now - cached.getCheckedAt() >= TimeUnit.SECONDS.toMillis(properties.getMissingTimeToLiveSeconds())) {
+                periodsToLoad.add(period);
+            }
+        }
+        if (!periodsToLoad.isEmpty()) {
+            loadAll(filePrefix, periodsToLoad);
+        }
+        List<CachedSummary> periodSummaries = new ArrayList<>();
+        for (String period : periods) {
+            CachedSummary cached = summaries.get(getObjectPath(filePrefix, period));
+            if (cached != null && cached.getUsage() != null) {
+                periodSummaries.add(cached);
+            }
+        }
+        return periodSummaries;
+    }
+
+    private String getObjectPath(String filePrefix, String period) {
+        return filePrefix + period + FileExtension.JSON_FILE.getExtension();
+    }
+
+    /**
+     * Download and parse the summaries concurrently. The files missing from the listing are not requested.
+     */
+    private void loadAll(String filePrefix, List<String> periods) {
+        Optional<Map<String, String>> objects = listTimer.record(() -> s3Service.listObjects(Constants.ONCOKB_S3_BUCKET, filePrefix));
+        long now = System.currentTimeMillis();
+        Map<String, CompletableFuture<CachedSummary>> futures = new LinkedHashMap<>();
+        for (String period : periods) {
+            String objectPath = getObjectPath(filePrefix, period);
+            if (objects.isPresent() && !objects.get().containsKey(objectPath)) {
+                summaries.put(objectPath, new CachedSummary(null, null, now));
+                continue;
+            }
+            futures.put(objectPath, loading.computeIfAbsent(objectPath, path -> CompletableFuture.supplyAsync(() -> {
+                CachedSummary loaded = load(filePrefix, period);
+                summaries.put(path, loaded);
+                return loaded;
+            }, loader)));
+        }
+        for (Map.Entry<String, CompletableFuture<CachedSummary>> future : futures.entrySet()) {
+            try {
+                future.getValue().join();
+            } catch (CompletionException e) {
+                log.error("Failed to load the usage summary {}", future.getKey(), e.getCause());
+            } finally {
+                loading.remove(future.getKey(), future.getValue());
+            }
+        }
+    }
+
+    private List<String> getMonths() {
+        ZonedDateTime today = TimeUtil.getCurrentNYTime(clock);
+        ZonedDateTime startDate = today.minusYears(3).withDayOfYear(1).minusDays(1);
+        long totalMonthsToGoBack = Period.between(startDate.toLocalDate(), today.toLocalDate()).toTotalMonths();
+        List<String> months = new ArrayList<>();
+        for (long monthsBack = 0; monthsBack < totalMonthsToGoBack; monthsBack++) {
+            months.add(today.minus(monthsBack, ChronoUnit.MONTHS).format(MONTH_FORMATTER));
+        }
+        return months;
+    }
+
+    private List<String> getYears() {
+        ZonedDateTime today = TimeUtil.getCurrentNYTime(clock);
+        List<String> years = new ArrayList<>();
+        for (long yearsBack = 0; yearsBack < YEARS_TO_GO_BACK; yearsBack++) {
+            years.add(today.minus(yearsBack, ChronoUnit.YEARS).format(YEAR_FORMATTER));
+        }
+        return years;
+    }
+
+    /**
+     * Check a summary which is already loaded, or known to be missing, against S3 and download it again if it changed.
+     */
+    private void revalidate(String filePrefix, String period) {
+        String objectPath = getObjectPath(filePrefix, period);
+        CachedSummary cached = summaries.get(objectPath);
+        if (cached == null) {
+            return;
+        }
+        Optional<HeadObjectResponse> metadata = s3Service.getObjectMetadata(Constants.ONCOKB_S3_BUCKET, objectPath);
+        if (cached.getUsage() == null && !metadata.isPresent()) {
+            summaries.put(objectPath, new CachedSummary(null, null, System.currentTimeMillis()));
+            return;
+        }
+        // The copy is kept when S3 cannot be reached
+        if (cached.getUsage() != null && (!metadata.isPresent() || Objects.equals(metadata.get().eTag(), cached.getETag()))) {
+            meterRegistry.counter("oncokb.usage.summary.loads", "result", "revalidated").increment();
+            return;
+        }
+        CachedSummary loaded = load(filePrefix, period);
+        if (loaded.getUsage() != null || cached.getUsage() == null) {
+            summaries.put(objectPath, loaded);
+        }
+    }
+
+    private CachedSummary load(String filePrefix, String period) {
+        meterRegistry.counter("oncokb.usage.summary.loads", "result", "fetched").increment();
+        String objectPath = getObjectPath(filePrefix, period);
+        long now = System.currentTimeMillis();
+        long start = System.nanoTime();
+        Optional<ResponseInputStream<GetObjectResponse>> s3object = s3Service.getObject(Constants.ONCOKB_S3_BUCKET, objectPath);
+        if (!s3object.isPresent()) {
+            fetchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return new CachedSummary(null, null, now);
+        }
+        byte[] content;
+        String eTag;
+        try (ResponseInputStream<GetObjectResponse> inputStream = s3object.get()) {
+            content = StreamUtils.copyToByteArray(inputStream);
+            eTag = inputStream.response().eTag();
+        } catch (IOException e) {
+            log.error("Failed to download the usage summary {}", objectPath, e);
+            return new CachedSummary(null, null, now);
+        } finally {
+            fetchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        start = System.nanoTime();
+        try {
+            boolean perUser = YEAR_USERS_USAGE_SUMMARY_FILE_PREFIX.equals(filePrefix) || MONTH_USERS_USAGE_SUMMARY_FILE_PREFIX.equals(filePrefix);
+            boolean yearFile = YEAR_USERS_USAGE_SUMMARY_FILE_PREFIX.equals(filePrefix) || YEAR_RESOURCES_USAGE_SUMMARY_FILE_PREFIX.equals(filePrefix);
+            return new CachedSummary(eTag, parse(content, period, perUser, yearFile), now);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to parse the usage summary {}", objectPath, e);
+            return new CachedSummary(null, null, now);
+        } finally {
+            parseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Stream the summary into usage matrices, without building the json tree.
+     * <p>
+     * A year file has the usage of the year under "year" and the usage of its months under "month". A month file has
+     * the usage of its days under "day". The user summaries have one such object per user, the resource summaries only
+     * one.
+     */
+    private UsageData parse(byte[] content, String filePeriod, boolean perUser, boolean yearFile) throws IOException {
+        UsageData.Builder builder = UsageData.builder(users, endpoints);
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8))) {
+            if (!perUser) {
+                readUsage(reader, RESOURCE_USER, filePeriod, yearFile, builder);
+            } else if (!skipNull(reader)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    readUsage(reader, reader.nextName(), filePeriod, yearFile, builder);
+                }
+                reader.endObject();
+            }
+        }
+        return builder.build();
+    }
+
+    private void readUsage(JsonReader reader, String user, String filePeriod, boolean yearFile, UsageData.Builder builder) throws IOException {
+        if (skipNull(reader)) {
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (yearFile && "year".equals(name)) {
+                readCounts(reader, user, filePeriod, builder.getYear());
+            } else if (yearFile && "month".equals(name)) {
+                readPeriods(reader, user, builder.getMonth());
+            } else if (!yearFile && "day".equals(name)) {
+                readPeriods(reader, user, builder.getDay());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readPeriods(JsonReader reader, String user, UsageMatrix.Builder matrix) throws IOException {
+        if (skipNull(reader)) {
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            readCounts(reader, user, reader.nextName(), matrix);
+        }
+        reader.endObject();
+    }
+
+    private void readCounts(JsonReader reader, String user, String period, UsageMatrix.Builder matrix) throws IOException {
+        if (skipNull(reader)) {
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String endpoint = reader.nextName();
+            if (skipNull(reader)) {
+                continue;
+            }
+            try {
+                matrix.add(user, period, endpoint, reader.nextLong());
+            } catch (IllegalArgumentException e) {
+                log.warn("Skipped the usage of {} on {}: {}", endpoint, period, e.getMessage());
+            }
+        }
+        reader.endObject();
+    }
+
+    private boolean skipNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    private void startRefresh() {
+        if (refreshStarted.compareAndSet(false, true)) {
+            refresher.scheduleWithFixedDelay(this::refreshSafely, properties.getRefreshSeconds(), properties.getRefreshSeconds(), TimeUnit.SECONDS);
+        }
+    }
+
+    private void refreshSafely() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.error("Failed to refresh the usage summaries", e);
+        }
+    }
+
+    /**
+     * Revalidate the summaries the cron job may still update.
+     */
+    public void refresh() {
+        List<String> months = getMonths().subList(0, MUTABLE_PERIODS);
+        List<String> years = getYears().subList(0, MUTABLE_PERIODS);
+        for (String filePrefix : Arrays.asList(MONTH_USERS_USAGE_SUMMARY_FILE_PREFIX, MONTH_RESOURCES_USAGE_SUMMARY_FILE_PREFIX)) {
+            for (String month : months) {
+                revalidate(filePrefix, month);
+            }
+        }
+        for (String filePrefix : Arrays.asList(YEAR_USERS_USAGE_SUMMARY_FILE_PREFIX, YEAR_RESOURCES_USAGE_SUMMARY_FILE_PREFIX)) {
+            for (String year : years) {
+                revalidate(filePrefix, year);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        refresher.shutdownNow();
+        loader.shutdownNow();
+    }
+
+    private static class CachedSummary {
+        private final String eTag;
+        // Null if the summary does not exist
+        private final UsageData usage;
+        private final long checkedAt;
+
+        CachedSummary(String eTag, UsageData usage, long checkedAt) {
+            this.eTag = eTag;
+            this.usage = usage;
+            this.checkedAt = checkedAt;
+        }
+
+        String getETag() {
+            return eTag;
+        }
+
+        UsageData getUsage() {
+            return usage;
+        }
+
+        long getCheckedAt() {
+            return checkedAt;
+        }
+    }
+
+    private static class MergedUsage {
+        private final List<CachedSummary> parts;
+        private final UsageData usageData;
+
+        MergedUsage(List<CachedSummary> parts, UsageData usageData) {
+            this.parts = parts;
+            this.usageData = usageData;
+        }
+
+        List<CachedSummary> getParts() {
+            return parts;
+        }
+
+        UsageData getUsageData() {
+            return usageData;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import org.mskcc.cbio.oncokb.security.uuid.TokenProvider;
 import org.mskcc.cbio.oncokb.service.dto.useradditionalinfo.*;
 import org.mskcc.cbio.oncokb.service.dto.CompanyDTO;
 import org.mskcc.cbio.oncokb.service.dto.UserDTO;
+import org.mskcc.cbio.oncokb.service.dto.UserIdsDTO;
 import org.mskcc.cbio.oncokb.service.mapper.UserMapper;
 import org.mskcc.cbio.oncokb.service.mapper.CompanyMapper;
 import org.mskcc.cbio.oncokb.util.StringUtil;
@@ -32,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -53,6 +55,8 @@ import static org.mskcc.cbio.oncokb.config.Constants.*;
 import static org.mskcc.cbio.oncokb.config.cache.UserCacheResolver.USERS_BY_EMAIL_CACHE;
 import static org.mskcc.cbio.oncokb.config.cache.UserCacheResolver.USERS_BY_LOGIN_CACHE;
 import static org.mskcc.cbio.oncokb.config.cache.UserCacheResolver.ALL_USERS_CACHE;
+import static org.mskcc.cbio.oncokb.config.cache.UserCacheResolver.RATE_LIMIT_TIER_BY_LOGIN_CACHE;
+import static org.mskcc.cbio.oncokb.config.cache.TokenCacheResolver.TOKEN_PRINCIPAL_BY_UUID_CACHE;
 
 /**
  * Service class for managing users.
@@ -61,6 +65,9 @@ import static org.mskcc.cbio.oncokb.config.cache.UserCacheResolver.ALL_USERS_CAC
 @Transactional
 public class UserService {
 
+    // Bounds the size of the IN clause when looking up users by email
+    private static final int EMAIL_BATCH_SIZE = 1000;
+
     private final Logger log = LoggerFactory.getLogger(UserService.class);
 
     private final UserRepository userRepository;
@@ -565,6 +572,34 @@ public class UserService {
         return userRepository.findOneWithAuthoritiesByEmailIgnoreCase(email);
     }
 
+    /**
+     * Look up the ids of the users with the emails, ignoring case, in a few queries instead of one per email.
+     *
+     * @param emails the emails of the users
+     * @return the ids of the user and company, keyed by the given email. The emails without a user are not included.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, UserIdsDTO> getUserIdsByEmailsIgnoreCase(Collection<String> emails) {
+        Map<String, List<String>> emailsByLowerCase = new HashMap<>();
+        for (String email : emails) {
+            if (email != null) {
+                emailsByLowerCase.computeIfAbsent(email.toLowerCase(), key -> new ArrayList<>()).add(email);
+            }
+        }
+        List<String> lowerCaseEmails = new ArrayList<>(emailsByLowerCase.keySet());
+        Map<String, UserIdsDTO> userIds = new HashMap<>();
+        for (int start = 0; start < lowerCaseEmails.size(); start += EMAIL_BATCH_SIZE) {
+            List<String> batch = lowerCaseEmails.subList(start, Math.min(start + EMAIL_BATCH_SIZE, lowerCaseEmails.size()));
+            for (Object[] row : userRepository.findAllIdsAndCompanyIdsByLowerCaseEmailIn(batch)) {
+                UserIdsDTO ids = new UserIdsDTO((Long) row[0], (Long) row[2]);
+                for (String email : emailsByLowerCase.getOrDefault(((String) row[1]).toLowerCase(), Collections.emptyList())) {
+                    userIds.putIfAbsent(email, ids);
+                }
+            }
+        }
+        return userIds;
+    }
+
     @Transactional(readOnly = true)
     public Page<UserDTO> getAllRegisteredUsers(Pageable pageable) {
         return userRepository.findAllByActivatedIsTrueOrderByCreatedBy(pageable).map(user -> userMapper.userToUserDTO(user));
@@ -890,6 +925,13 @@ public class UserService {
             Objects.requireNonNull(cacheManager.getCache(this.cacheNameResolver.getCacheName(USERS_BY_EMAIL_CACHE))).evict(user.getEmail());
         }
         Objects.requireNonNull(cacheManager.getCache(this.cacheNameResolver.getCacheName(ALL_USERS_CACHE))).evict("getAllManagedUsers");;
+        // The rate limit tier of the user is its license type
+        Objects.requireNonNull(cacheManager.getCache(this.cacheNameResolver.getCacheName(RATE_LIMIT_TIER_BY_LOGIN_CACHE))).evict(user.getLogin());
+        // The token principals hold the login and authorities of the user
+        Cache tokenPrincipalCache = Objects.requireNonNull(cacheManager.getCache(this.cacheNameResolver.getCacheName(TOKEN_PRINCIPAL_BY_UUID_CACHE)));
+        if (user.getLogin() != null) {
+            tokenService.findByUser(user).forEach(token -> tokenPrincipalCache.evict(token.getToken()));
+        }
     }
 
     public boolean isAdmin(String userLogin) {
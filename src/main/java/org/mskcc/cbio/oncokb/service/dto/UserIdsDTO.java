@@ -0,0 +1,34 @@
+package org.mskcc.cbio.oncokb.service.dto;
+
+/**
+ * A DTO representing the id of a user and the id of its company, if any.
+ */
+public class UserIdsDTO {
+    private Long id;
+    private Long companyId;
+
+    public UserIdsDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public UserIdsDTO(Long id, Long companyId) {
+        this.id = id;
+        this.companyId = companyId;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getCompanyId() {
+        return companyId;
+    }
+
+    public void setCompanyId(Long companyId) {
+        this.companyId = companyId;
+    }
+}
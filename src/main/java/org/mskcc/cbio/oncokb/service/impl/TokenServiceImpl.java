@@ -5,6 +5,7 @@ import org.mskcc.cbio.oncokb.domain.Token;
 import org.mskcc.cbio.oncokb.domain.User;
 import org.mskcc.cbio.oncokb.repository.TokenRepository;
 import org.mskcc.cbio.oncokb.repository.TokenStatsRepository;
+import org.mskcc.cbio.oncokb.security.uuid.UnknownTokenFilter;
 import org.mskcc.cbio.oncokb.service.TokenService;
 import org.mskcc.cbio.oncokb.web.rest.errors.CustomMessageRuntimeException;
 import org.slf4j.Logger;
@@ -23,6 +24,7 @@ import java.util.UUID;
 import java.util.stream.Collectors;
 
 import static org.mskcc.cbio.oncokb.config.cache.TokenCacheResolver.TOKENS_BY_USER_LOGIN_CACHE;
+import static org.mskcc.cbio.oncokb.config.cache.TokenCacheResolver.TOKEN_PRINCIPAL_BY_UUID_CACHE;
 import static org.mskcc.cbio.oncokb.config.cache.TokenCacheResolver.TOKEN_BY_UUID_CACHE;
 
 /**
@@ -42,17 +44,20 @@ public class TokenServiceImpl implements TokenService {
 
     private final CacheNameResolver cacheNameResolver;
 
+    private final UnknownTokenFilter unknownTokenFilter;
 
     public TokenServiceImpl(
         TokenRepository tokenRepository,
         CacheManager cacheManager,
         CacheNameResolver cacheNameResolver,
-        TokenStatsRepository tokenStatsRepository
+        TokenStatsRepository tokenStatsRepository,
+        UnknownTokenFilter unknownTokenFilter
     ) {
         this.tokenRepository = tokenRepository;
         this.tokenStatsRepository = tokenStatsRepository;
         this.cacheManager = cacheManager;
         this.cacheNameResolver = cacheNameResolver;
+        this.unknownTokenFilter = unknownTokenFilter;
     }
 
     @Override
@@ -165,15 +170,25 @@ public class TokenServiceImpl implements TokenService {
             throw new CustomMessageRuntimeException("Token could not be found");
         }
         tokenRepository.delete(tokenOptional.get());
+        this.evictTokenCaches(tokenOptional.get());
     }
 
     @Override
     public void deleteAllByUser(User user) {
+        // The tokens cannot be found anymore once deleted, their cached principals would keep authenticating
+        List<Token> tokens = tokenRepository.findByUserLogin(user.getLogin());
         tokenRepository.deleteAllByUser(user);
+        tokens.forEach(this::evictTokenCaches);
     }
 
     private void clearTokenCaches(Token token) {
+        this.evictTokenCaches(token);
+        unknownTokenFilter.tokenSaved(token.getToken());
+    }
+
+    private void evictTokenCaches(Token token) {
         Objects.requireNonNull(cacheManager.getCache(this.cacheNameResolver.getCacheName(TOKEN_BY_UUID_CACHE))).evict(token.getToken());
         Objects.requireNonNull(cacheManager.getCache(this.cacheNameResolver.getCacheName(TOKENS_BY_USER_LOGIN_CACHE))).evict(token.getUser().getLogin());
+        Objects.requireNonNull(cacheManager.getCache(this.cacheNameResolver.getCacheName(TOKEN_PRINCIPAL_BY_UUID_CACHE))).evict(token.getToken());
     }
 }
@@ -12,12 +12,16 @@ import org.slf4j.LoggerFactory;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.Calendar;
 import java.util.List;
 import java.util.Optional;
+import java.util.TimeZone;
 
 /**
  * Service Implementation for managing {@link TokenStats}.
@@ -28,13 +32,18 @@ public class TokenStatsServiceImpl implements TokenStatsService {
 
     private final Logger log = LoggerFactory.getLogger(TokenStatsServiceImpl.class);
 
+    private static final String INSERT_SQL = "insert into token_stats (access_ip, resource, access_time, usage_count, token_id) values (?, ?, ?, ?, ?)";
+
     private final TokenStatsRepository tokenStatsRepository;
 
     private final JHipsterProperties jHipsterProperties;
 
-    public TokenStatsServiceImpl(TokenStatsRepository tokenStatsRepository, JHipsterProperties jHipsterProperties) {
+    private final JdbcTemplate jdbcTemplate;
+
+    public TokenStatsServiceImpl(TokenStatsRepository tokenStatsRepository, JHipsterProperties jHipsterProperties, JdbcTemplate jdbcTemplate) {
         this.tokenStatsRepository = tokenStatsRepository;
         this.jHipsterProperties = jHipsterProperties;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     @Override
@@ -43,6 +52,20 @@ public class TokenStatsServiceImpl implements TokenStatsService {
         return tokenStatsRepository.save(tokenStats);
     }
 
+    @Override
+    public void insertAll(List<TokenStats> tokenStats) {
+        log.debug("Request to insert {} TokenStats", tokenStats.size());
+        // access_time is stored in UTC, same as hibernate.jdbc.time_zone
+        Calendar utcCalendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        jdbcTemplate.batchUpdate(INSERT_SQL, tokenStats, tokenStats.size(), (ps, stats) -> {
+            ps.setString(1, stats.getAccessIp());
+            ps.setString(2, stats.getResource());
+            ps.setTimestamp(3, Timestamp.from(stats.getAccessTime()), utcCalendar);
+            ps.setInt(4, stats.getUsageCount());
+            ps.setLong(5, stats.getToken().getId());
+        });
+    }
+
     @Transactional(readOnly = true)
     public Page<TokenStats> findAll(Instant before, Pageable pageable) {
         log.debug("Request to get all TokenStats");
@@ -0,0 +1,43 @@
+package org.mskcc.cbio.oncokb.util;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.OptionalInt;
+
+public class JsonUtil {
+
+    /**
+     * Count the elements of a json array without building them. The elements are skipped by the token stream,
+     * so counting a large batch request only allocates the reader.
+     * @param json json string
+     * @return the number of top level elements, or empty if the json is not a well formed array
+     */
+    public static OptionalInt countArrayElements(String json) {
+        if (json == null) {
+            return OptionalInt.empty();
+        }
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            // Same leniency as Gson.fromJson
+            reader.setLenient(true);
+            if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                return OptionalInt.empty();
+            }
+            reader.beginArray();
+            int count = 0;
+            while (reader.hasNext()) {
+                reader.skipValue();
+                count++;
+            }
+            reader.endArray();
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                return OptionalInt.empty();
+            }
+            return OptionalInt.of(count);
+        } catch (IOException | IllegalStateException e) {
+            return OptionalInt.empty();
+        }
+    }
+}
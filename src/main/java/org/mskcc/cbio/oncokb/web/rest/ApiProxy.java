@@ -1,41 +1,35 @@
 package org.mskcc.cbio.oncokb.web.rest;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import io.github.bucket4j.ConsumptionProbe;
 import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.interceptor.RateLimitInterceptor;
 import org.mskcc.cbio.oncokb.domain.Token;
-import org.mskcc.cbio.oncokb.domain.TokenStats;
 import org.mskcc.cbio.oncokb.domain.User;
 import org.mskcc.cbio.oncokb.security.AuthoritiesConstants;
 import org.mskcc.cbio.oncokb.security.SecurityUtils;
 import org.mskcc.cbio.oncokb.security.uuid.TokenProvider;
 import org.mskcc.cbio.oncokb.service.*;
+import org.mskcc.cbio.oncokb.util.JsonUtil;
 import org.mskcc.cbio.oncokb.web.rest.errors.BadRequestAlertException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.*;
-import org.springframework.http.converter.ByteArrayHttpMessageConverter;
-import org.springframework.http.converter.StringHttpMessageConverter;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.server.ResponseStatusException;
 import springfox.documentation.annotations.ApiIgnore;
 
 import javax.mail.MessagingException;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.charset.StandardCharsets;
 import java.time.Instant;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
-import java.util.stream.Collectors;
 
 @ApiIgnore("The proxy has its swagger json definition")
 @RestController
@@ -54,7 +48,16 @@ public class ApiProxy {
     private UserService userService;
 
     @Autowired
-    private TokenStatsService tokenStatsService;
+    private TokenUsageRecorder tokenUsageRecorder;
+
+    @Autowired
+    private ProxyRateLimitService proxyRateLimitService;
+
+    @Autowired
+    private UsageRouteMatcher usageRouteMatcher;
+
+    @Autowired
+    private AsyncProxyExecutor asyncProxyExecutor;
 
     @Autowired
     private MailService mailService;
@@ -62,49 +65,60 @@ public class ApiProxy {
     @Autowired
     private ApplicationProperties applicationProperties;
 
-    private String IP_HEADER = "X-FORWARDED-FOR";
-
+    /**
+     * @return the response of oncokb core to be written by Spring MVC when the request is proxied asynchronously,
+     * otherwise null once the response is written
+     */
     @RequestMapping(path = "/**", method = {RequestMethod.GET, RequestMethod.POST, RequestMethod.HEAD})
-    public ResponseEntity<String> proxy(@RequestBody(required = false) String body, HttpMethod method, HttpServletRequest request)
-        throws URISyntaxException {
+    public Object proxy(@RequestBody(required = false) String body, HttpMethod method, HttpServletRequest request, HttpServletResponse response)
+        throws URISyntaxException, IOException {
         URI uri = apiProxyService.prepareURI(request);
 
-        List<String> tokenUsageCheckList = Arrays.stream(applicationProperties.getTokenUsageCheck().split(",")).map(api -> api.trim()).filter(api -> !api.isEmpty()).collect(Collectors.toList());
-        Optional<String> needsToBeRecorded = tokenUsageCheckList.stream().filter(api -> request.getRequestURI().startsWith(api)).findFirst();
-
-        if (needsToBeRecorded.isPresent()) {
-            updateTokenStats(request, getUsageCount(body, method));
+        int usageCount = getUsageCount(body, method);
+        if (!consumeRateLimit(request, response, usageCount)) {
+            return null;
+        }
+        if (usageRouteMatcher.isUsageChecked(request.getRequestURI())) {
+            tokenUsageRecorder.record(request, usageCount);
         }
 
         // We want to record all traffics to /api using public_website token
 //        updatePublicWebsiteUsage(body, method);
 
         HttpHeaders httpHeaders = apiProxyService.prepareHttpHeaders(request.getContentType());
-        RestTemplate restTemplate = new RestTemplate();
-        restTemplate.getMessageConverters().add(0, new StringHttpMessageConverter(StandardCharsets.UTF_8));
-
-        try {
-            return restTemplate.exchange(uri, method, new HttpEntity<>(body, httpHeaders), String.class);
-        } catch (HttpClientErrorException httpClientErrorException) {
-            HttpHeaders responseHeaders = httpClientErrorException.getResponseHeaders();
-            return ResponseEntity
-                .status(httpClientErrorException.getStatusCode())
-                .headers(responseHeaders)
-                .body(httpClientErrorException.getResponseBodyAsString());
+        // The data downloads are served from the spool or with ranges, they are proxied synchronously
+        if (asyncProxyExecutor.isEnabled() && !apiProxyService.isDataDownload(request.getRequestURI())) {
+            String route = usageRouteMatcher.getUsageBucket(request.getRequestURI()).orElse(AsyncProxyExecutor.DEFAULT_ROUTE);
+            String requestUri = request.getRequestURI();
+            HttpHeaders clientHeaders = apiProxyService.getClientHeaders(request);
+            return asyncProxyExecutor.execute(route, () -> apiProxyService.proxyExchangeForEntity(uri, method, body, httpHeaders, requestUri, clientHeaders));
         }
+        apiProxyService.proxyExchange(uri, method, body, httpHeaders, request, response);
+        return null;
     }
 
     @RequestMapping(path = {"/private/utils/data/sqlDump", "/private/utils/data/transcriptSqlDump"})
-    public ResponseEntity<byte[]> proxyDataReleaseDownload(@RequestBody(required = false) String body, HttpMethod method, HttpServletRequest request)
-        throws URISyntaxException {
+    public void proxyDataReleaseDownload(@RequestBody(required = false) String body, HttpMethod method, HttpServletRequest request, HttpServletResponse response)
+        throws URISyntaxException, IOException {
         URI uri = apiProxyService.prepareURI(request);
-        updateTokenStats(request, 1);
+        tokenUsageRecorder.record(request, 1);
 
         HttpHeaders httpHeaders = apiProxyService.prepareHttpHeaders(request.getContentType());
-        RestTemplate restTemplate = new RestTemplate();
-        restTemplate.getMessageConverters().add(
-            new ByteArrayHttpMessageConverter());
-        return restTemplate.exchange(uri, method, new HttpEntity<>(body, httpHeaders), byte[].class);
+        apiProxyService.proxyExchange(uri, method, body, httpHeaders, request, response);
+    }
+
+    private boolean consumeRateLimit(HttpServletRequest request, HttpServletResponse response, int usageCount) throws IOException {
+        Optional<ConsumptionProbe> probe = proxyRateLimitService.tryConsume(request, usageCount);
+        if (!probe.isPresent()) {
+            return true;
+        }
+        if (probe.get().isConsumed()) {
+            response.addHeader(RateLimitInterceptor.RATE_LIMIT_REMAINING_HEADER, String.valueOf(probe.get().getRemainingTokens()));
+            return true;
+        }
+        response.addHeader(RateLimitInterceptor.RATE_LIMIT_RESET_HEADER, String.valueOf(Instant.now().plusNanos(probe.get().getNanosToWaitForRefill()).toEpochMilli()));
+        response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "You have exhausted your API Request Quota");
+        return false;
     }
 
     @Async
@@ -145,52 +159,12 @@ public class ApiProxy {
     private int getUsageCount(String body, HttpMethod method) {
         int usageCount = 1;
         if (method != null && method.equals(HttpMethod.POST)) {
-            try {
-                Gson gson = new GsonBuilder().create();
-                Object[] postRequest = gson.fromJson(body, Object[].class);
-                usageCount = postRequest.length;
-            }catch (Exception e) {
-                // For any reason the request cannot be parsed to a list, we should ignore it and count it as 1
-            }
+            // For any reason the request cannot be parsed to a list, we should ignore it and count it as 1
+            usageCount = JsonUtil.countArrayElements(body).orElse(1);
         }
         return usageCount;
     }
 
-    @Async
-    public void updateTokenStats(HttpServletRequest request, int usageCount) {
-        if (applicationProperties.getDbReadOnly()) {
-            return;
-        }
-        Optional<String> userOptional = SecurityUtils.getCurrentUserLogin();
-        if (userOptional.isPresent()) {
-            List<String> tokenUsageCheckWhitelist = Arrays.stream(applicationProperties.getTokenUsageCheckWhitelist().split(",")).map(api -> api.trim()).filter(api -> !api.isEmpty()).collect(Collectors.toList());
-
-            Optional<User> user = userService.getUserWithAuthoritiesByLogin(userOptional.get());
-            Optional<UUID> uuidOptional = SecurityUtils.getCurrentUserToken();
-            if (user.isPresent() &&
-                user.get().getAuthorities().stream().filter(authority -> authority.getName().equalsIgnoreCase(AuthoritiesConstants.ADMIN)).count() == 0 &&
-                !tokenUsageCheckWhitelist.contains(user.get().getLogin())) {
-                List<Token> tokenList = tokenProvider.getUserTokens(user.get());
-                tokenList.forEach(token -> {
-                    if (uuidOptional.isPresent() && uuidOptional.get().equals(token.getToken())) {
-                        TokenStats tokenStats = new TokenStats();
-                        tokenStats.setToken(token);
-
-                        String ipAddress = request.getHeader(IP_HEADER);
-                        if (ipAddress == null) {
-                            tokenStats.setAccessIp(Optional.ofNullable(request.getRemoteAddr()).orElse(""));
-                        }else{
-                            tokenStats.setAccessIp(ipAddress);
-                        }
-                        tokenStats.setAccessTime(Instant.now());
-                        tokenStats.setUsageCount(usageCount);
-                        tokenStats.setResource(request.getMethod() + " " + request.getRequestURI());
-                        tokenStatsService.save(tokenStats);
-                    }
-                });
-            }
-        }
-    }
     //    @RequestMapping(value = "/private/utils/dataRelease/sqlDump",
 //        produces = {"application/zip"},
 //        method = RequestMethod.GET)
@@ -200,9 +174,8 @@ public class ApiProxy {
 
         HttpHeaders httpHeaders = apiProxyService.prepareHttpHeaders(request.getContentType());
 //        httpHeaders.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-        RestTemplate restTemplate = new RestTemplate();
         try {
-            ResponseEntity entity = restTemplate.exchange(uri, method, new HttpEntity<>(null, httpHeaders), byte[].class);
+            ResponseEntity entity = apiProxyService.exchange(uri, method, null, httpHeaders, byte[].class);
             ResponseEntity responseEntity = new ResponseEntity<>((byte[]) entity.getBody(), entity.getHeaders(), entity.getStatusCode());
             return ResponseEntity.ok()
                 .contentType(new MediaType("application", "zip"))
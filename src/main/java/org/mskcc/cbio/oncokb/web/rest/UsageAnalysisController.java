@@ -4,28 +4,20 @@ import static org.mskcc.cbio.oncokb.config.Constants.*;
 
 import com.google.gson.Gson;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
-import java.time.Clock;
-import java.time.Period;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.stream.Collectors;
 import javax.validation.constraints.NotNull;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
-import org.mskcc.cbio.oncokb.config.Constants;
 import org.mskcc.cbio.oncokb.domain.User;
-import org.mskcc.cbio.oncokb.domain.enumeration.FileExtension;
-import org.mskcc.cbio.oncokb.service.S3Service;
+import org.mskcc.cbio.oncokb.service.UsageData;
+import org.mskcc.cbio.oncokb.service.UsageMatrix;
+import org.mskcc.cbio.oncokb.service.UsageSummaryStore;
 import org.mskcc.cbio.oncokb.service.UserService;
 import org.mskcc.cbio.oncokb.service.dto.UserDTO;
+import org.mskcc.cbio.oncokb.service.dto.UserIdsDTO;
 import org.mskcc.cbio.oncokb.service.mapper.UserMapper;
-import org.mskcc.cbio.oncokb.util.TimeUtil;
 import org.mskcc.cbio.oncokb.web.rest.vm.usageAnalysis.UsageSummary;
 import org.mskcc.cbio.oncokb.web.rest.vm.usageAnalysis.UserOverviewUsage;
 import org.mskcc.cbio.oncokb.web.rest.vm.usageAnalysis.UserStats;
@@ -38,14 +30,12 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
-import software.amazon.awssdk.core.ResponseInputStream;
-import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 
 @Controller
 @RequestMapping("/api")
 public class UsageAnalysisController {
   @Autowired
-  private S3Service s3Service;
+  private UsageSummaryStore usageSummaryStore;
 
   @Autowired
   private UserService userService;
@@ -53,171 +43,12 @@ public class UsageAnalysisController {
   @Autowired
   private UserMapper userMapper;
 
-  @Autowired
-  private Clock clock;
-
-  private JSONObject requestData(String file)
-    throws UnsupportedEncodingException, IOException, ParseException {
-    Optional<ResponseInputStream<GetObjectResponse>> s3object = s3Service.getObject(
-      Constants.ONCOKB_S3_BUCKET,
-      file
-    );
-    if (s3object.isPresent()) {
-      ResponseInputStream<GetObjectResponse> inputStream = s3object.get();
-      JSONParser jsonParser = new JSONParser();
-      return (JSONObject) jsonParser.parse(
-        new InputStreamReader(inputStream, "UTF-8")
-      );
-    }
-    return null;
-  }
-
-  private Map<String, JSONObject> getMonthSummaries(String filePrefix)
-    throws UnsupportedEncodingException, IOException, ParseException {
-    Map<String, JSONObject> monthSummaries = new HashMap<>();
-
-    ZonedDateTime today = TimeUtil.getCurrentNYTime(clock);
-    ZonedDateTime startDate = today.minusYears(3).withDayOfYear(1).minusDays(1);
-
-    long totalMonthsToGoBack = Period
-      .between(startDate.toLocalDate(), today.toLocalDate())
-      .toTotalMonths();
-
-    for (long monthsBack = 0; monthsBack < totalMonthsToGoBack; monthsBack++) {
-      String month = today
-        .minus(monthsBack, ChronoUnit.MONTHS)
-        .format(DateTimeFormatter.ofPattern("yyyy-MM"));
-
-      JSONObject monthSummary = requestData(
-        filePrefix + month + FileExtension.JSON_FILE.getExtension()
-      );
-
-      if (monthSummary != null) {
-        monthSummaries.put(month, monthSummary);
-      }
-    }
-    return monthSummaries;
-  }
-
-  private Map<String, JSONObject> getYearSummaries(String yearFilePrefix)
-    throws UnsupportedEncodingException, IOException, ParseException {
-    Map<String, JSONObject> yearSummaries = new HashMap<>();
-
-    ZonedDateTime today = TimeUtil.getCurrentNYTime(clock);
-
-    for (long yearsBack = 0; yearsBack < 4; yearsBack++) {
-      String year = today
-        .minus(yearsBack, ChronoUnit.YEARS)
-        .format(DateTimeFormatter.ofPattern("yyyy"));
-
-      JSONObject yearSummary = requestData(
-        yearFilePrefix + year + FileExtension.JSON_FILE.getExtension()
-      );
-
-      if (yearSummary != null) {
-        yearSummaries.put(year, yearSummary);
-      }
-    }
-    return yearSummaries;
-  }
-
-  public Map<String, UsageSummary> getUserSummaries()
-    throws UnsupportedEncodingException, IOException, ParseException {
-    Map<String, JSONObject> months = getMonthSummaries(
-      MONTH_USERS_USAGE_SUMMARY_FILE_PREFIX
-    );
-    Map<String, JSONObject> years = getYearSummaries(
-      YEAR_USERS_USAGE_SUMMARY_FILE_PREFIX
-    );
-    Map<String, UsageSummary> userData = new HashMap<>();
-
-    Set<String> users = new HashSet<>();
-
-    for (Map.Entry<String, JSONObject> entry : years.entrySet()) {
-      users.addAll(entry.getValue().keySet());
-    }
-
-    String yearKey = "year";
-    String monthKey = "month";
-    String dayKey = "day";
-    for (String user : users) {
-      userData.put(user, new UsageSummary());
-    }
-    for (Map.Entry<String, JSONObject> yearEntry : years.entrySet()) {
-      String year = yearEntry.getKey();
-      for (Object rawUserEntry : yearEntry.getValue().entrySet()) {
-        Map.Entry<String, JSONObject> userEntry = (Map.Entry<String, JSONObject>) rawUserEntry;
-        String user = userEntry.getKey();
-        UsageSummary userMap = userData.get(user);
-        if (userMap == null) {
-          break;
-        }
-        Map<String, Map<String, Long>> yearMap = userMap.getYear();
-        Map<String, Map<String, Long>> monthMap = userMap.getMonth();
-        yearMap.put(year, (JSONObject) userEntry.getValue().get(yearKey));
-        JSONObject monthJson = (JSONObject) userEntry.getValue().get(monthKey);
-        for (Object rawMonthEntry : monthJson.entrySet()) {
-          Map.Entry<String, JSONObject> monthEntry = (Map.Entry<String, JSONObject>) rawMonthEntry;
-          String month = monthEntry.getKey();
-          monthMap.put(month, monthEntry.getValue());
-        }
-      }
-    }
-    for (Map.Entry<String, JSONObject> monthEntry : months.entrySet()) {
-      for (Object rawUserEntry : monthEntry.getValue().entrySet()) {
-        Map.Entry<String, JSONObject> userEntry = (Map.Entry<String, JSONObject>) rawUserEntry;
-        String user = userEntry.getKey();
-        UsageSummary userMap = userData.get(user);
-        if (userMap == null) {
-          break;
-        }
-        Map<String, Map<String, Long>> dayMap = userMap.getDay();
-        JSONObject dayJson = (JSONObject) userEntry.getValue().get(dayKey);
-        for (Object rawDayEntry : dayJson.entrySet()) {
-          Map.Entry<String, JSONObject> dayEntry = (Map.Entry<String, JSONObject>) rawDayEntry;
-          String day = dayEntry.getKey();
-          dayMap.put(day, dayEntry.getValue());
-        }
-      }
-    }
-    return userData;
-  }
-
-  public UsageSummary getResourceSummaries()
-    throws IOException, ParseException {
-    Map<String, JSONObject> months = getMonthSummaries(
-      MONTH_RESOURCES_USAGE_SUMMARY_FILE_PREFIX
-    );
-    Map<String, JSONObject> years = getYearSummaries(
-      YEAR_RESOURCES_USAGE_SUMMARY_FILE_PREFIX
-    );
-    UsageSummary resourceData = new UsageSummary();
-    String yearKey = "year";
-    String monthKey = "month";
-    String dayKey = "day";
-
-    for (Map.Entry<String, JSONObject> yearEntry : years.entrySet()) {
-      String year = yearEntry.getKey();
-      Map<String, Map<String, Long>> yearMap = resourceData.getYear();
-      Map<String, Map<String, Long>> monthMap = resourceData.getMonth();
-      yearMap.put(year, (JSONObject) yearEntry.getValue().get(yearKey));
-      JSONObject monthJson = (JSONObject) yearEntry.getValue().get(monthKey);
-      for (Object rawMonthEntry : monthJson.entrySet()) {
-        Map.Entry<String, JSONObject> monthEntry = (Map.Entry<String, JSONObject>) rawMonthEntry;
-        String month = monthEntry.getKey();
-        monthMap.put(month, monthEntry.getValue());
-      }
-    }
-    for (Map.Entry<String, JSONObject> monthEntry : months.entrySet()) {
-      Map<String, Map<String, Long>> dayMap = resourceData.getDay();
-      JSONObject dayJson = (JSONObject) monthEntry.getValue().get(dayKey);
-      for (Object rawDayEntry : dayJson.entrySet()) {
-        Map.Entry<String, JSONObject> dayEntry = (Map.Entry<String, JSONObject>) rawDayEntry;
-        String day = dayEntry.getKey();
-        dayMap.put(day, dayEntry.getValue());
-      }
-    }
-    return resourceData;
+  private UsageSummary getUsageSummary(UsageData usageData, String user) {
+    UsageSummary usageSummary = new UsageSummary();
+    usageSummary.setYear(usageData.getYear().getUsage(user));
+    usageSummary.setMonth(usageData.getMonth().getUsage(user));
+    usageSummary.setDay(usageData.getDay().getUsage(user));
+    return usageSummary;
   }
 
   /**
@@ -233,29 +64,29 @@ public class UsageAnalysisController {
   )
     throws IOException, ParseException {
     if (userId != null) {
-      Map<String, UsageSummary> userSummaries = getUserSummaries();
+      UsageData usageData = usageSummaryStore.getUserUsage();
 
       Optional<User> user = userService.getUserById(userId);
       String email = user.map(User::getEmail).orElse(null);
 
-      UsageSummary usageSummary = userSummaries.getOrDefault(
-        email,
-        new UsageSummary()
-      );
+      // Only the users in the year summaries have a usage summary
+      UsageSummary usageSummary = email != null &&
+        usageData.getYear().hasUser(email)
+        ? getUsageSummary(usageData, email)
+        : new UsageSummary();
 
+      UserDTO userDTO = userMapper.userToUserDTO(user.get());
       UserUsage userUsage = new UserUsage();
       userUsage.setUserFirstName(user.get().getFirstName());
       userUsage.setUserLastName(user.get().getLastName());
       userUsage.setUserEmail(email);
       userUsage.setLicenseType(
-        Objects.nonNull(userMapper.userToUserDTO(user.get()).getLicenseType())
-          ? userMapper.userToUserDTO(user.get()).getLicenseType().getName()
+        Objects.nonNull(userDTO.getLicenseType())
+          ? userDTO.getLicenseType().getName()
           : null
       );
-      userUsage.setJobTitle(userMapper.userToUserDTO(user.get()).getJobTitle());
-      userUsage.setCompany(
-        userMapper.userToUserDTO(user.get()).getCompanyName()
-      );
+      userUsage.setJobTitle(userDTO.getJobTitle());
+      userUsage.setCompany(userDTO.getCompanyName());
       userUsage.setSummary(usageSummary);
       return new ResponseEntity<>(userUsage, HttpStatus.OK);
     }
@@ -275,41 +106,32 @@ public class UsageAnalysisController {
     @RequestParam(required = false) Long companyId
   )
     throws IOException, ParseException {
-    Map<String, UsageSummary> usageSummaries = getUserSummaries();
+    UsageData usageData = usageSummaryStore.getUserUsage();
     List<UserOverviewUsage> result = new ArrayList<>();
-    Set<String> emailSet = usageSummaries.keySet();
+    Set<String> emailSet = usageData.getYear().getUsers();
+    Map<String, UserIdsDTO> userIds = userService.getUserIdsByEmailsIgnoreCase(
+      emailSet
+    );
     if (companyId != null) {
       emailSet =
         emailSet
           .stream()
           .filter(
-            item -> {
-              Optional<User> user = userService.getUserWithAuthoritiesByEmailIgnoreCase(
-                item
-              );
-              if (user.isPresent()) {
-                UserDTO userDTO = userMapper.userToUserDTO(user.get());
-                if (userDTO.getCompany() != null) {
-                  return Objects.equals(
-                    userDTO.getCompany().getId(),
-                    companyId
-                  );
-                }
-              }
-              return false;
-            }
+            item ->
+              userIds.containsKey(item) &&
+              Objects.equals(userIds.get(item).getCompanyId(), companyId)
           )
           .collect(Collectors.toSet());
     }
     for (String email : emailSet) {
-      UsageSummary usageSummary = usageSummaries.get(email);
+      UsageSummary usageSummary = getUsageSummary(usageData, email);
       UserOverviewUsage userOverviewUsage = new UserOverviewUsage();
       userOverviewUsage.setUserEmail(email);
-      Optional<User> user = userService.getUserWithAuthoritiesByEmailIgnoreCase(
-        email
-      );
       userOverviewUsage.setUserId(
-        user.map(value -> value.getId().toString()).orElse(null)
+        Optional
+          .ofNullable(userIds.get(email))
+          .map(value -> value.getId().toString())
+          .orElse(null)
       );
 
       Map<String, UserStats> dayUsage = getStats(usageSummary.getDay());
@@ -391,13 +213,17 @@ public class UsageAnalysisController {
   @GetMapping("/usage/summary/resources")
   public ResponseEntity<UsageSummary> resourceUsageGet()
     throws IOException, ParseException {
-    UsageSummary summary = getResourceSummaries();
+    UsageSummary summary = getUsageSummary(
+      usageSummaryStore.getResourceUsage(),
+      UsageSummaryStore.RESOURCE_USER
+    );
     return new ResponseEntity<>(summary, HttpStatus.OK);
   }
 
   /**
    * API to get the usage of a specific resource
    * @param endpoint
+   * @param prefix whether to sum the usage of all the endpoints starting with the endpoint, such as /api/v1/annotate/
    * @return usage of a specific endpoint
    * @throws UnsupportedEncodingException
    * @throws IOException
@@ -405,71 +231,49 @@ public class UsageAnalysisController {
    */
   @GetMapping("/usage/resources")
   public ResponseEntity<UsageSummary> resourceDetailGet(
-    @RequestParam String endpoint
+    @RequestParam String endpoint,
+    @RequestParam(defaultValue = "false") boolean prefix
   )
     throws UnsupportedEncodingException, IOException, ParseException {
-    Map<String, UsageSummary> userSummaries = getUserSummaries();
+    UsageData usageData = usageSummaryStore.getUserUsage();
+    List<String> yearEndpoints = getEndpoints(
+      usageData.getYear(),
+      endpoint,
+      prefix
+    );
+    // The users who used the endpoints in one of the years
+    Set<String> users = usageData.getYear().getUsers(yearEndpoints);
 
     UsageSummary resourceDetail = new UsageSummary();
-    Map<String, Map<String, Long>> yearResourceDetail = new HashMap<>();
-    Map<String, Map<String, Long>> monthResourceDetail = new HashMap<>();
-    Map<String, Map<String, Long>> dayResourceDetail = new HashMap<>();
-    resourceDetail.setYear(yearResourceDetail);
-    resourceDetail.setMonth(monthResourceDetail);
-    resourceDetail.setDay(dayResourceDetail);
-
-    for (Map.Entry<String, UsageSummary> userEntry : userSummaries.entrySet()) {
-      String user = userEntry.getKey();
-      UsageSummary userUsageSummary = userEntry.getValue();
-      boolean containsEndpoint = false;
-      for (Map<String, Long> endpointUsage : userUsageSummary
-        .getYear()
-        .values()) {
-        if (endpointUsage.containsKey(endpoint)) {
-          containsEndpoint = true;
-          break;
-        }
-      }
-      if (containsEndpoint) {
-        addUserUsage(
-          user,
-          endpoint,
-          yearResourceDetail,
-          userUsageSummary.getYear()
-        );
-        addUserUsage(
-          user,
-          endpoint,
-          monthResourceDetail,
-          userUsageSummary.getMonth()
-        );
-        addUserUsage(
-          user,
-          endpoint,
-          dayResourceDetail,
-          userUsageSummary.getDay()
-        );
-      }
-    }
+    resourceDetail.setYear(
+      usageData.getYear().getEndpointUsage(yearEndpoints, users)
+    );
+    resourceDetail.setMonth(
+      usageData
+        .getMonth()
+        .getEndpointUsage(
+          getEndpoints(usageData.getMonth(), endpoint, prefix),
+          users
+        )
+    );
+    resourceDetail.setDay(
+      usageData
+        .getDay()
+        .getEndpointUsage(
+          getEndpoints(usageData.getDay(), endpoint, prefix),
+          users
+        )
+    );
     return new ResponseEntity<>(resourceDetail, HttpStatus.OK);
   }
 
-  private void addUserUsage(
-    String user,
+  private List<String> getEndpoints(
+    UsageMatrix matrix,
     String endpoint,
-    Map<String, Map<String, Long>> resourceDetail,
-    Map<String, Map<String, Long>> summary
+    boolean prefix
   ) {
-    for (Map.Entry<String, Map<String, Long>> entry : summary.entrySet()) {
-      String key = entry.getKey();
-      Map<String, Long> map = entry.getValue();
-      if (map.containsKey(endpoint)) {
-        long usage = map.get(endpoint);
-        if (!resourceDetail.containsKey(key)) {
-          resourceDetail.put(key, new HashMap<>());
-        }
-        resourceDetail.get(key).put(user, usage);
-      }
-    }
+    return prefix
+      ? matrix.getEndpoints(endpoint)
+      : Collections.singletonList(endpoint);
   }
 }
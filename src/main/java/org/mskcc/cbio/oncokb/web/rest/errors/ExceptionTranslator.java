@@ -3,9 +3,11 @@ package org.mskcc.cbio.oncokb.web.rest.errors;
 import io.github.jhipster.config.JHipsterConstants;
 
 import org.apache.commons.lang3.StringUtils;
+import org.mskcc.cbio.oncokb.service.UpstreamUnavailableException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageConversionException;
@@ -140,6 +142,19 @@ public class ExceptionTranslator implements ProblemHandling, SecurityAdviceTrait
         return create(new InvalidPasswordException(), request);
     }
 
+    @ExceptionHandler
+    public ResponseEntity<Problem> handleUpstreamUnavailableException(UpstreamUnavailableException ex, NativeWebRequest request) {
+        Problem problem = Problem.builder()
+            .withType(ErrorConstants.DEFAULT_TYPE)
+            .withTitle("Service Unavailable")
+            .withStatus(Status.SERVICE_UNAVAILABLE)
+            .withDetail(ex.getMessage())
+            .build();
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()));
+        return create(ex, problem, request, headers);
+    }
+
     @ExceptionHandler
     public ResponseEntity<Problem> handleBadRequestAlertException(BadRequestAlertException ex, NativeWebRequest request) {
         return create(ex, request);
@@ -4,11 +4,14 @@ import io.github.jhipster.config.JHipsterConstants;
 import io.github.jhipster.config.JHipsterProperties;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mskcc.cbio.oncokb.config.cache.CacheNameResolver;
 import org.mskcc.cbio.oncokb.repository.TokenStatsRepository;
 import org.mskcc.cbio.oncokb.repository.UserRepository;
 import org.mskcc.cbio.oncokb.security.uuid.TokenProvider;
+import org.mskcc.cbio.oncokb.security.uuid.UnknownTokenFilter;
 import org.mskcc.cbio.oncokb.service.TokenService;
 import org.springframework.boot.web.embedded.undertow.UndertowServletWebServerFactory;
+import org.springframework.cache.CacheManager;
 import org.springframework.http.HttpHeaders;
 import org.springframework.mock.env.MockEnvironment;
 import org.springframework.mock.web.MockServletContext;
@@ -59,7 +62,7 @@ public class WebConfigurerTest {
         UserRepository userRepository = mock(UserRepository.class);
         TokenService tokenService = mock(TokenService.class);
 
-        tokenProvider = new TokenProvider(userRepository, tokenService);
+        tokenProvider = new TokenProvider(userRepository, tokenService, mock(CacheManager.class), mock(CacheNameResolver.class), mock(UnknownTokenFilter.class));
 
         webConfigurer = new WebConfigurer(env, props, tokenProvider);
     }
@@ -0,0 +1,60 @@
+package org.mskcc.cbio.oncokb.config.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link CustomCacheManager} class.
+ */
+public class CustomCacheManagerUnitTest {
+    private static final String CACHE_NAME = "oncokb-usersByLogin";
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private CustomCacheManager cacheManager;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        cacheManager = new CustomCacheManager(2, 3600, meterRegistry);
+    }
+
+    private com.github.benmanes.caffeine.cache.Cache<?, ?> getNativeCache(Cache cache) {
+        return (com.github.benmanes.caffeine.cache.Cache<?, ?>) cache.getNativeCache();
+    }
+
+    @Test
+    public void cacheIsCreatedOnceAndBounded() {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        assertThat(cacheManager.getCache(CACHE_NAME)).isSameAs(cache);
+        assertThat(cacheManager.getCacheNames()).containsExactly(CACHE_NAME);
+
+        for (int i = 0; i < 100; i++) {
+            cache.put("user" + i, i);
+        }
+        getNativeCache(cache).cleanUp();
+
+        assertThat(getNativeCache(cache).estimatedSize()).isLessThanOrEqualTo(2);
+        assertThat(meterRegistry.get("cache.evictions").tag("cache", CACHE_NAME).functionCounter().count()).isGreaterThanOrEqualTo(98);
+    }
+
+    @Test
+    public void hitsAndMissesAreReportedPerCache() {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        cacheManager.getCache("oncokb-tokenByUuid");
+
+        cache.put("user", 1);
+        cache.get("user");
+        cache.get("user");
+        cache.get("unknown");
+
+        assertThat(meterRegistry.get("cache.gets").tags("cache", CACHE_NAME, "result", "hit").functionCounter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("cache.gets").tags("cache", CACHE_NAME, "result", "miss").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tags("cache", "oncokb-tokenByUuid", "result", "hit").functionCounter().count()).isZero();
+        assertThat(meterRegistry.get("cache.size").tag("cache", CACHE_NAME).gauge().value()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,126 @@
+package org.mskcc.cbio.oncokb.config.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.MessageListener;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * Test class for the {@link NearCacheManager} class, with two pods sharing the same Redis cache and topic.
+ */
+public class NearCacheManagerUnitTest {
+    private static final String CACHE_NAME = "oncokb-usersByLogin";
+
+    private final List<MessageListener<NearCacheManager.CacheInvalidation>> listeners = new CopyOnWriteArrayList<>();
+
+    private final List<NearCacheManager.CacheInvalidation> published = new CopyOnWriteArrayList<>();
+
+    private Cache redisCache;
+
+    private Cache cache;
+
+    private Cache otherPodCache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        // The topic delivers every message to every pod, the publishing one included
+        RTopic topic = Mockito.mock(RTopic.class);
+        Mockito.when(topic.addListener(eq(NearCacheManager.CacheInvalidation.class), any(MessageListener.class))).thenAnswer(i -> {
+            listeners.add(i.getArgument(1));
+            return listeners.size();
+        });
+        Mockito.when(topic.publish(any())).thenAnswer(i -> {
+            NearCacheManager.CacheInvalidation invalidation = i.getArgument(0);
+            published.add(invalidation);
+            listeners.forEach(listener -> listener.onMessage("near-cache-invalidation", invalidation));
+            return (long) listeners.size();
+        });
+        RedissonClient redissonClient = Mockito.mock(RedissonClient.class);
+        Mockito.when(redissonClient.getTopic(anyString())).thenReturn(topic);
+
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        CacheNameResolver cacheNameResolver = new CacheNameResolver(applicationProperties);
+        ConcurrentMapCacheManager redisCacheManager = new ConcurrentMapCacheManager();
+        redisCache = redisCacheManager.getCache(CACHE_NAME);
+        cache = new NearCacheManager(redisCacheManager, applicationProperties.getNearCache(), redissonClient, cacheNameResolver).getCache(CACHE_NAME);
+        otherPodCache = new NearCacheManager(redisCacheManager, applicationProperties.getNearCache(), redissonClient, cacheNameResolver).getCache(CACHE_NAME);
+    }
+
+    @Test
+    public void replacedValueIsInvalidatedOnTheOtherPods() {
+        cache.put("user", "first");
+        assertThat(otherPodCache.get("user", String.class)).isEqualTo("first");
+
+        cache.put("user", "second");
+
+        assertThat(otherPodCache.get("user", String.class)).isEqualTo("second");
+        assertThat(redisCache.get("user", String.class)).isEqualTo("second");
+    }
+
+    @Test
+    public void evictedValueIsInvalidatedOnTheOtherPods() {
+        cache.put("user", "first");
+        assertThat(otherPodCache.get("user", String.class)).isEqualTo("first");
+
+        cache.evict("user");
+
+        assertThat(otherPodCache.get("user")).isNull();
+    }
+
+    @Test
+    public void clearInvalidatesTheOtherPods() {
+        cache.put("user", "first");
+        cache.put("admin", "first");
+        assertThat(otherPodCache.get("user", String.class)).isEqualTo("first");
+        assertThat(otherPodCache.get("admin", String.class)).isEqualTo("first");
+
+        cache.clear();
+
+        assertThat(otherPodCache.get("user")).isNull();
+        assertThat(otherPodCache.get("admin")).isNull();
+    }
+
+    @Test
+    public void ownInvalidationIsIgnored() {
+        cache.put("user", "first");
+        cache.put("user", "second");
+        assertThat(published).hasSize(1);
+
+        // Only seen by a pod which did not drop its local copy on its own message
+        redisCache.put("user", "changed in redis");
+
+        assertThat(cache.get("user", String.class)).isEqualTo("second");
+    }
+
+    @Test
+    public void fillingAMissIsNotBroadcast() {
+        assertThat(cache.get("user")).isNull();
+        cache.put("user", "first");
+        assertThat(otherPodCache.get("user", String.class)).isEqualTo("first");
+
+        assertThat(published).isEmpty();
+    }
+
+    @Test
+    public void localCopyIsNotSharedWithTheCaller() {
+        cache.put("user", new StringBuilder("first"));
+
+        cache.get("user", StringBuilder.class).append(" changed");
+
+        assertThat(cache.get("user", StringBuilder.class).toString()).isEqualTo("first");
+    }
+}
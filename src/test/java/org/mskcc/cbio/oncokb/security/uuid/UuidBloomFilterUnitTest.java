@@ -0,0 +1,45 @@
+package org.mskcc.cbio.oncokb.security.uuid;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link UuidBloomFilter} class.
+ */
+public class UuidBloomFilterUnitTest {
+
+    @Test
+    public void mightContainAllAddedUuids() {
+        List<UUID> uuids = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            uuids.add(UUID.randomUUID());
+        }
+        UuidBloomFilter filter = UuidBloomFilter.create(uuids, 0.01);
+        assertThat(uuids).allMatch(filter::mightContain);
+
+        UUID newToken = UUID.randomUUID();
+        filter.put(newToken);
+        assertThat(filter.mightContain(newToken)).isTrue();
+    }
+
+    @Test
+    public void rejectsMostUnknownUuids() {
+        List<UUID> uuids = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            uuids.add(UUID.randomUUID());
+        }
+        UuidBloomFilter filter = UuidBloomFilter.create(uuids, 0.01);
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain(UUID.randomUUID())) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(200);
+    }
+}
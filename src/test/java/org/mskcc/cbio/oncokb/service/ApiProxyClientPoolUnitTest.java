@@ -0,0 +1,82 @@
+package org.mskcc.cbio.oncokb.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+
+import java.io.IOException;
+import java.net.URI;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link ApiProxyClientPool} class, with a local server standing in for oncokb core.
+ */
+public class ApiProxyClientPoolUnitTest {
+    private static final String POOL_METRIC = "httpcomponents.httpclient.pool.total.connections";
+
+    private FakeUpstream upstream;
+
+    private ApplicationProperties applicationProperties;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ApiProxyClientPool apiProxyClientPool;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        upstream = new FakeUpstream().handle("/api/v1/info", exchange -> FakeUpstream.send(exchange, 200, "{}"));
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.setApiProxyUrl(upstream.getUrl());
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (apiProxyClientPool != null) {
+            apiProxyClientPool.destroy();
+        }
+        upstream.close();
+    }
+
+    private double getConnections(String state) {
+        return meterRegistry.get(POOL_METRIC).tags("httpclient", "oncokb.proxy.client", "upstream", ApiProxyClientPool.DEFAULT_UPSTREAM, "state", state).gauge().value();
+    }
+
+    @Test
+    public void connectionIsReusedAcrossRequests() throws IOException {
+        apiProxyClientPool = new ApiProxyClientPool(applicationProperties, meterRegistry);
+        URI uri = URI.create(upstream.getUrl() + "/api/v1/info");
+
+        for (int i = 0; i < 5; i++) {
+            try (CloseableHttpResponse response = apiProxyClientPool.getHttpClient(uri).execute(new HttpGet(uri))) {
+                assertThat(EntityUtils.toString(response.getEntity())).isEqualTo("{}");
+                assertThat(getConnections("leased")).isEqualTo(1);
+            }
+        }
+
+        // The single keep-alive connection is back in the pool after each request
+        assertThat(getConnections("leased")).isZero();
+        assertThat(getConnections("available")).isEqualTo(1);
+        assertThat(upstream.getRequestCount("/api/v1/info")).isEqualTo(5);
+    }
+
+    @Test
+    public void connectionsPerRouteCoverTheAsyncProxyThreads() {
+        applicationProperties.getProxyClient().setMaxConnectionsPerRoute(100);
+        applicationProperties.getAsyncProxy().setThreads(300);
+        assertThat(ApiProxyClientPool.getMaxConnectionsPerRoute(applicationProperties)).isEqualTo(100);
+
+        applicationProperties.getAsyncProxy().setEnabled(true);
+        apiProxyClientPool = new ApiProxyClientPool(applicationProperties, meterRegistry);
+
+        assertThat(ApiProxyClientPool.getMaxConnectionsPerRoute(applicationProperties)).isEqualTo(300);
+        assertThat(meterRegistry.get("httpcomponents.httpclient.pool.route.max.default").gauge().value()).isEqualTo(300);
+        assertThat(meterRegistry.get("httpcomponents.httpclient.pool.total.max").gauge().value()).isEqualTo(300);
+    }
+}
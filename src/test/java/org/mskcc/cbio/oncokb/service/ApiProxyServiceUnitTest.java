@@ -0,0 +1,383 @@
+package org.mskcc.cbio.oncokb.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.application.DataReleaseSpoolProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link ApiProxyService} class, with a local server standing in for oncokb core.
+ */
+public class ApiProxyServiceUnitTest {
+    private static final String SQL_DUMP = "/api/private/utils/data/sqlDump";
+
+    private static final String SPOOLED_QUERY = "version=v4.26";
+
+    private static final String SPOOLED_BODY = "dump version=v4.26";
+
+    private static final String NOT_SPOOLED = "/api/private/utils/data/other";
+
+    private static final String STREAMED = "/api/v1/annotate/mutations/byProteinChange";
+
+    private static final int STREAMED_CHUNK_BYTES = 64 * 1024;
+
+    private static final int STREAMED_CHUNKS = 16;
+
+    private static final String ENCODED = "/api/v1/variants";
+
+    private static final String COALESCED = "/api/v1/genes/lookup";
+
+    private static final String ENCODED_BODY = "[{\"hugoSymbol\":\"BRAF\"}]";
+
+    @TempDir
+    Path directory;
+
+    private FakeUpstream upstream;
+
+    private ApiProxyClientPool apiProxyClientPool;
+
+    private ProxyResponseCache proxyResponseCache;
+
+    private UpstreamResilience upstreamResilience;
+
+    private DataReleaseSpool dataReleaseSpool;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ApiProxyService apiProxyService;
+
+    private volatile CountDownLatch streamedBodyRelease = new CountDownLatch(0);
+
+    private final AtomicReference<Optional<String>> upstreamAcceptEncoding = new AtomicReference<>();
+
+    @BeforeEach
+    public void setup() throws IOException {
+        upstream = new FakeUpstream()
+            .handle("/api/v1/info", exchange -> FakeUpstream.send(exchange, 200, "{\"dataVersion\":{\"version\":\"v4.26\",\"date\":\"02272025\"}}"))
+            .handle(SQL_DUMP, exchange -> FakeUpstream.send(exchange, 200, "dump " + exchange.getRequestURI().getRawQuery()))
+            .handle(NOT_SPOOLED, this::sendRange)
+            .handle(STREAMED, this::sendStreamed)
+            .handle(ENCODED, this::sendEncoded)
+            .handle(COALESCED, this::sendEncoded);
+
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setApiProxyUrl(upstream.getUrl());
+        DataReleaseSpoolProperties spoolProperties = applicationProperties.getDataReleaseSpool();
+        spoolProperties.setEnabled(true);
+        spoolProperties.setDirectory(directory.toString());
+        spoolProperties.setPaths(Collections.singletonList(SQL_DUMP));
+        spoolProperties.setDataVersionCheckSeconds(3600);
+        applicationProperties.getRequestCoalescing().setEnabled(true);
+
+        meterRegistry = new SimpleMeterRegistry();
+        apiProxyClientPool = new ApiProxyClientPool(applicationProperties, meterRegistry);
+        proxyResponseCache = new ProxyResponseCache(applicationProperties, apiProxyClientPool, meterRegistry);
+        upstreamResilience = new UpstreamResilience(applicationProperties, apiProxyClientPool, meterRegistry);
+        dataReleaseSpool = new DataReleaseSpool(applicationProperties, apiProxyClientPool, upstreamResilience, meterRegistry);
+
+        apiProxyService = new ApiProxyService();
+        ReflectionTestUtils.setField(apiProxyService, "applicationProperties", applicationProperties);
+        ReflectionTestUtils.setField(apiProxyService, "apiProxyClientPool", apiProxyClientPool);
+        ReflectionTestUtils.setField(apiProxyService, "proxyResponseCache", proxyResponseCache);
+        ReflectionTestUtils.setField(apiProxyService, "proxyRequestCoalescer", new ProxyRequestCoalescer(applicationProperties, meterRegistry));
+        ReflectionTestUtils.setField(apiProxyService, "upstreamResilience", upstreamResilience);
+        ReflectionTestUtils.setField(apiProxyService, "dataReleaseSpool", dataReleaseSpool);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        streamedBodyRelease.countDown();
+        dataReleaseSpool.destroy();
+        proxyResponseCache.destroy();
+        upstreamResilience.destroy();
+        apiProxyClientPool.destroy();
+        upstream.close();
+    }
+
+    /**
+     * Serves 0123456789, and the first four bytes for a bytes=0-3 range like a server supporting ranges.
+     */
+    private void sendRange(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst(HttpHeaders.RANGE);
+        if (range == null) {
+            FakeUpstream.send(exchange, 200, "0123456789");
+        } else if (range.equals("bytes=0-3")) {
+            exchange.getResponseHeaders().set(HttpHeaders.CONTENT_RANGE, "bytes 0-3/10");
+            FakeUpstream.send(exchange, 206, "0123");
+        } else {
+            exchange.getResponseHeaders().set(HttpHeaders.CONTENT_RANGE, "bytes */10");
+            FakeUpstream.send(exchange, 416, "");
+        }
+    }
+
+    /**
+     * Sends the first chunk of a chunked response, and the others once the body is released.
+     */
+    private void sendStreamed(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, "application/json");
+        exchange.getResponseHeaders().set("X-Oncokb-Request", "streamed");
+        exchange.sendResponseHeaders(200, 0);
+        byte[] chunk = new byte[STREAMED_CHUNK_BYTES];
+        Arrays.fill(chunk, (byte) 'a');
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(chunk);
+            outputStream.flush();
+            streamedBodyRelease.await(10, TimeUnit.SECONDS);
+            for (int i = 1; i < STREAMED_CHUNKS; i++) {
+                outputStream.write(chunk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Compresses the body when the request accepts gzip, like oncokb core.
+     */
+    private void sendEncoded(HttpExchange exchange) throws IOException {
+        String acceptEncoding = exchange.getRequestHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING);
+        upstreamAcceptEncoding.set(Optional.ofNullable(acceptEncoding));
+        exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, "application/json");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            exchange.getResponseHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            FakeUpstream.send(exchange, 200, gzip(ENCODED_BODY));
+        } else {
+            FakeUpstream.send(exchange, 200, ENCODED_BODY);
+        }
+    }
+
+    private static byte[] gzip(String body) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+            gzipOutputStream.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static String gunzip(byte[] body) throws IOException {
+        try (GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return StreamUtils.copyToString(inputStream, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * The spool may still be downloading the current release in the background, wait for its connection as well.
+     */
+    private double awaitLeasedConnections() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        double leased = getLeasedConnections();
+        while (leased > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            leased = getLeasedConnections();
+        }
+        return leased;
+    }
+
+    private double getLeasedConnections() {
+        return meterRegistry.get("httpcomponents.httpclient.pool.total.connections")
+            .tags("upstream", ApiProxyClientPool.DEFAULT_UPSTREAM, "state", "leased").gauge().value();
+    }
+
+    private MockHttpServletResponse proxy(MockHttpServletRequest request) throws IOException {
+        String query = request.getQueryString();
+        URI uri = URI.create(upstream.getUrl() + request.getRequestURI() + (query == null ? "" : "?" + query));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        apiProxyService.proxyExchange(uri, HttpMethod.valueOf(request.getMethod()), null, new HttpHeaders(), request, response);
+        return response;
+    }
+
+    private MockHttpServletRequest spooledRequest(String range) throws InterruptedException {
+        URI uri = URI.create(upstream.getUrl() + SQL_DUMP + "?" + SPOOLED_QUERY);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!dataReleaseSpool.get(uri).isPresent() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(dataReleaseSpool.get(uri)).isPresent();
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", SQL_DUMP);
+        request.setQueryString(SPOOLED_QUERY);
+        if (range != null) {
+            request.addHeader(HttpHeaders.RANGE, range);
+        }
+        return request;
+    }
+
+    @Test
+    public void spooledFileServesASingleRange() throws Exception {
+        MockHttpServletResponse response = proxy(spooledRequest("bytes=0-3"));
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 0-3/" + SPOOLED_BODY.length());
+        assertThat(response.getContentAsString()).isEqualTo("dump");
+        // Served locally, oncokb core was only called to spool the file
+        assertThat(upstream.getRequestCount(SQL_DUMP + "?" + SPOOLED_QUERY)).isEqualTo(1);
+    }
+
+    @Test
+    public void spooledFileRejectsAnUnsatisfiableRange() throws Exception {
+        MockHttpServletResponse response = proxy(spooledRequest("bytes=1000-"));
+
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */" + SPOOLED_BODY.length());
+    }
+
+    @Test
+    public void spooledFileIsSentWholeForMultipleRanges() throws Exception {
+        MockHttpServletResponse response = proxy(spooledRequest("bytes=0-1,3-4"));
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo(SPOOLED_BODY);
+    }
+
+    @Test
+    public void spooledFileIsSentWholeWhenIfRangeDoesNotMatch() throws Exception {
+        MockHttpServletRequest request = spooledRequest("bytes=0-3");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"previous-release\"");
+
+        MockHttpServletResponse response = proxy(request);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo(SPOOLED_BODY);
+    }
+
+    @Test
+    public void upstreamRangeResponsesArePassedThrough() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", NOT_SPOOLED);
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-3");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"release\"");
+
+        MockHttpServletResponse partial = proxy(request);
+
+        assertThat(partial.getStatus()).isEqualTo(206);
+        assertThat(partial.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 0-3/10");
+        assertThat(partial.getContentAsString()).isEqualTo("0123");
+        assertThat(upstream.getRequestHeaders().get(upstream.getRequestHeaders().size() - 1).get(HttpHeaders.IF_RANGE)).containsExactly("\"release\"");
+
+        MockHttpServletRequest unsatisfiableRequest = new MockHttpServletRequest("GET", NOT_SPOOLED);
+        unsatisfiableRequest.addHeader(HttpHeaders.RANGE, "bytes=1000-");
+        MockHttpServletResponse unsatisfiable = proxy(unsatisfiableRequest);
+
+        assertThat(unsatisfiable.getStatus()).isEqualTo(416);
+        assertThat(unsatisfiable.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+    }
+
+    @Test
+    public void upstreamIgnoringTheRangeIsPassedThroughWhole() throws Exception {
+        // A version which is not spooled, oncokb core answers with the whole file
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", SQL_DUMP);
+        request.setQueryString("version=v1.0");
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-3");
+
+        MockHttpServletResponse response = proxy(request);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isNull();
+        assertThat(response.getContentAsString()).isEqualTo("dump version=v1.0");
+    }
+
+    @Test
+    public void streamedResponseIsReturnedBeforeTheBodyIsRead() throws Exception {
+        streamedBodyRelease = new CountDownLatch(1);
+        URI uri = URI.create(upstream.getUrl() + STREAMED);
+
+        // oncokb core holds the rest of the body, the response is returned once its headers are received
+        ResponseEntity<StreamingResponseBody> entity = apiProxyService.proxyExchangeForEntity(uri, HttpMethod.POST, "[]", new HttpHeaders(), STREAMED, new HttpHeaders());
+
+        assertThat(entity.getStatusCodeValue()).isEqualTo(200);
+        assertThat(entity.getHeaders().getFirst("X-Oncokb-Request")).isEqualTo("streamed");
+        assertThat(entity.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        // Hop-by-hop, the connection to the client has its own framing
+        assertThat(entity.getHeaders().containsKey(HttpHeaders.TRANSFER_ENCODING)).isFalse();
+        assertThat(getLeasedConnections()).isGreaterThanOrEqualTo(1);
+
+        streamedBodyRelease.countDown();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        entity.getBody().writeTo(outputStream);
+
+        assertThat(outputStream.size()).isEqualTo(STREAMED_CHUNK_BYTES * STREAMED_CHUNKS);
+        // The upstream response is closed once written, its connection goes back to the pool
+        assertThat(awaitLeasedConnections()).isZero();
+    }
+
+    @Test
+    public void streamedResponseIsCopiedToTheServletResponse() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", STREAMED);
+
+        MockHttpServletResponse response = proxy(request);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader("X-Oncokb-Request")).isEqualTo("streamed");
+        assertThat(response.getHeader(HttpHeaders.TRANSFER_ENCODING)).isNull();
+        assertThat(response.getContentAsByteArray()).hasSize(STREAMED_CHUNK_BYTES * STREAMED_CHUNKS);
+        assertThat(awaitLeasedConnections()).isZero();
+    }
+
+    @Test
+    public void compressedResponseIsPassedThroughUntouched() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", ENCODED);
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+
+        MockHttpServletResponse response = proxy(request);
+
+        assertThat(upstreamAcceptEncoding.get()).contains("gzip, deflate");
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(response.getHeader(HttpHeaders.VARY)).isEqualTo(HttpHeaders.ACCEPT_ENCODING);
+        // Neither decoded by the client pool nor encoded again, a single gunzip gives the body back
+        assertThat(response.getContentAsByteArray()).isEqualTo(gzip(ENCODED_BODY));
+        assertThat(gunzip(response.getContentAsByteArray())).isEqualTo(ENCODED_BODY);
+    }
+
+    @Test
+    public void responseIsNotCompressedForClientsNotAcceptingAnEncoding() throws Exception {
+        MockHttpServletResponse response = proxy(new MockHttpServletRequest("GET", ENCODED));
+
+        assertThat(upstreamAcceptEncoding.get()).isEmpty();
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(response.getContentAsString()).isEqualTo(ENCODED_BODY);
+    }
+
+    @Test
+    public void sharedResponseIsRequestedUncompressed() throws Exception {
+        // The coalesced response is shared by clients accepting different encodings
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", COALESCED);
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+
+        MockHttpServletResponse response = proxy(request);
+
+        assertThat(upstreamAcceptEncoding.get()).isEmpty();
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(response.getContentAsString()).isEqualTo(ENCODED_BODY);
+    }
+}
@@ -0,0 +1,127 @@
+package org.mskcc.cbio.oncokb.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.application.DataReleaseSpoolProperties;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link DataReleaseSpool} class, with a local server standing in for oncokb core.
+ */
+public class DataReleaseSpoolUnitTest {
+    private static final String SQL_DUMP = "/api/private/utils/data/sqlDump";
+
+    @TempDir
+    Path directory;
+
+    private final AtomicReference<String> dataVersion = new AtomicReference<>("v4.26");
+
+    private FakeUpstream upstream;
+
+    private ApiProxyClientPool apiProxyClientPool;
+
+    private DataReleaseSpool dataReleaseSpool;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        upstream = new FakeUpstream()
+            .handle("/api/v1/info", exchange -> FakeUpstream.send(exchange, 200, "{\"dataVersion\":{\"version\":\"" + dataVersion.get() + "\",\"date\":\"02272025\"}}"))
+            .handle(SQL_DUMP, exchange -> FakeUpstream.send(exchange, 200, "dump " + exchange.getRequestURI().getRawQuery()));
+
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setApiProxyUrl(upstream.getUrl());
+        DataReleaseSpoolProperties properties = applicationProperties.getDataReleaseSpool();
+        properties.setEnabled(true);
+        properties.setDirectory(directory.toString());
+        properties.setPaths(Collections.singletonList(SQL_DUMP));
+        properties.setVersions(Collections.singletonList("v4.25"));
+        // Only the check on startup runs by itself
+        properties.setDataVersionCheckSeconds(3600);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        apiProxyClientPool = new ApiProxyClientPool(applicationProperties, meterRegistry);
+        dataReleaseSpool = new DataReleaseSpool(applicationProperties, apiProxyClientPool, new UpstreamResilience(applicationProperties, apiProxyClientPool, meterRegistry), meterRegistry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataReleaseSpool.destroy();
+        apiProxyClientPool.destroy();
+        upstream.close();
+    }
+
+    private URI uri(String pathAndQuery) {
+        return URI.create(upstream.getUrl() + pathAndQuery);
+    }
+
+    private Optional<DataReleaseSpool.SpooledFile> awaitSpooled(String pathAndQuery) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        Optional<DataReleaseSpool.SpooledFile> spooledFile = dataReleaseSpool.get(uri(pathAndQuery));
+        while (!spooledFile.isPresent() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            spooledFile = dataReleaseSpool.get(uri(pathAndQuery));
+        }
+        return spooledFile;
+    }
+
+    @Test
+    public void servesTheVersionsRequestedByTheWebsite() throws Exception {
+        Optional<DataReleaseSpool.SpooledFile> current = awaitSpooled(SQL_DUMP + "?version=v4.26");
+        Optional<DataReleaseSpool.SpooledFile> configured = awaitSpooled(SQL_DUMP + "?version=v4.25");
+
+        assertThat(current).isPresent();
+        assertThat(new String(Files.readAllBytes(current.get().getPath()), StandardCharsets.UTF_8)).isEqualTo("dump version=v4.26");
+        assertThat(current.get().getETag()).isNotNull();
+        assertThat(configured).isPresent();
+        assertThat(new String(Files.readAllBytes(configured.get().getPath()), StandardCharsets.UTF_8)).isEqualTo("dump version=v4.25");
+
+        // Downloaded once, the next requests are served from the spool
+        assertThat(dataReleaseSpool.get(uri(SQL_DUMP + "?version=v4.26"))).isPresent();
+        assertThat(upstream.getRequestCount(SQL_DUMP + "?version=v4.26")).isEqualTo(1);
+        assertThat(upstream.getRequestCount(SQL_DUMP + "?version=v4.25")).isEqualTo(1);
+    }
+
+    @Test
+    public void onlySpoolsTheAllowedVersions() throws Exception {
+        awaitSpooled(SQL_DUMP + "?version=v4.26");
+
+        assertThat(dataReleaseSpool.get(uri(SQL_DUMP))).isEmpty();
+        assertThat(dataReleaseSpool.get(uri(SQL_DUMP + "?version=v1.0"))).isEmpty();
+        assertThat(dataReleaseSpool.get(uri(SQL_DUMP + "?version=v4.26&cacheBuster=1"))).isEmpty();
+        assertThat(dataReleaseSpool.get(uri("/api/private/utils/data/other?version=v4.26"))).isEmpty();
+        Thread.sleep(200);
+
+        assertThat(upstream.getRequestCount(SQL_DUMP)).isZero();
+        assertThat(upstream.getRequestCount(SQL_DUMP + "?version=v1.0")).isZero();
+        assertThat(upstream.getRequestCount(SQL_DUMP + "?version=v4.26&cacheBuster=1")).isZero();
+    }
+
+    @Test
+    public void followsTheCurrentDataVersion() throws Exception {
+        Optional<DataReleaseSpool.SpooledFile> previous = awaitSpooled(SQL_DUMP + "?version=v4.26");
+        awaitSpooled(SQL_DUMP + "?version=v4.25");
+
+        dataVersion.set("v4.27");
+        dataReleaseSpool.checkDataVersions();
+
+        assertThat(awaitSpooled(SQL_DUMP + "?version=v4.27")).isPresent();
+        // The previous data version is not configured, its file is deleted
+        assertThat(dataReleaseSpool.get(uri(SQL_DUMP + "?version=v4.26"))).isEmpty();
+        assertThat(previous.get().getPath()).doesNotExist();
+        assertThat(dataReleaseSpool.get(uri(SQL_DUMP + "?version=v4.25"))).isPresent();
+    }
+}
@@ -0,0 +1,91 @@
+package org.mskcc.cbio.oncokb.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local http server standing in for oncokb core in the proxy tests.
+ */
+public class FakeUpstream implements AutoCloseable {
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+    private final List<Map<String, List<String>>> requestHeaders = new CopyOnWriteArrayList<>();
+
+    public FakeUpstream() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @param path the path handled, the requests of its sub paths are handled as well
+     */
+    public FakeUpstream handle(String path, HttpHandler handler) {
+        server.createContext(path, exchange -> {
+            requests.computeIfAbsent(getPathAndQuery(exchange), key -> new AtomicInteger()).incrementAndGet();
+            requestHeaders.add(exchange.getRequestHeaders());
+            try {
+                handler.handle(exchange);
+            } finally {
+                exchange.close();
+            }
+        });
+        return this;
+    }
+
+    public String getUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * @param pathAndQuery the path of the request, followed by its query if any
+     */
+    public int getRequestCount(String pathAndQuery) {
+        AtomicInteger count = requests.get(pathAndQuery);
+        return count == null ? 0 : count.get();
+    }
+
+    public List<Map<String, List<String>>> getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    public static void send(HttpExchange exchange, int status, String body) throws IOException {
+        send(exchange, status, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private static String getPathAndQuery(HttpExchange exchange) {
+        String query = exchange.getRequestURI().getRawQuery();
+        return exchange.getRequestURI().getRawPath() + (query == null ? "" : "?" + query);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
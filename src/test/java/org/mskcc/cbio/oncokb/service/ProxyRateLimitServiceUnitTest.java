@@ -0,0 +1,154 @@
+package org.mskcc.cbio.oncokb.service;
+
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.jhipster.config.JHipsterProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.application.BandwidthProperties;
+import org.mskcc.cbio.oncokb.config.cache.CacheNameResolver;
+import org.mskcc.cbio.oncokb.config.cache.CustomCacheManager;
+import org.mskcc.cbio.oncokb.domain.User;
+import org.mskcc.cbio.oncokb.domain.UserDetails;
+import org.mskcc.cbio.oncokb.domain.enumeration.LicenseType;
+import org.mskcc.cbio.oncokb.repository.UserDetailsRepository;
+import org.mskcc.cbio.oncokb.repository.UserRepository;
+import org.mskcc.cbio.oncokb.security.AuthoritiesConstants;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mskcc.cbio.oncokb.config.cache.UserCacheResolver.RATE_LIMIT_TIER_BY_LOGIN_CACHE;
+
+/**
+ * Test class for the {@link ProxyRateLimitService} class.
+ */
+public class ProxyRateLimitServiceUnitTest {
+    private static final String LOGIN = "user";
+
+    private final UserDetails userDetails = new UserDetails().licenseType(LicenseType.ACADEMIC);
+
+    private UserRepository userRepository;
+
+    private CustomCacheManager cacheManager;
+
+    private CacheNameResolver cacheNameResolver;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ProxyRateLimitService proxyRateLimitService;
+
+    @BeforeEach
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setName("oncokb");
+        applicationProperties.getRateLimit().setProxyEnabled(true);
+        applicationProperties.getRateLimit().getProxyTiers().put(ProxyRateLimitService.DEFAULT_TIER, bandwidth(2));
+        applicationProperties.getRateLimit().getProxyTiers().put(LicenseType.ACADEMIC.name(), bandwidth(5));
+
+        User user = new User();
+        user.setLogin(LOGIN);
+        userRepository = Mockito.mock(UserRepository.class);
+        Mockito.when(userRepository.findOneWithAuthoritiesByLogin(LOGIN)).thenReturn(Optional.of(user));
+        UserDetailsRepository userDetailsRepository = Mockito.mock(UserDetailsRepository.class);
+        Mockito.when(userDetailsRepository.findOneByUser(user)).thenAnswer(i -> Optional.of(userDetails));
+
+        meterRegistry = new SimpleMeterRegistry();
+        cacheManager = new CustomCacheManager(100, 600, meterRegistry);
+        cacheNameResolver = new CacheNameResolver(applicationProperties);
+        RateLimitService rateLimitService = new RateLimitService(Optional.empty(), cacheNameResolver, new JHipsterProperties(), applicationProperties, meterRegistry);
+        proxyRateLimitService = new ProxyRateLimitService(applicationProperties, rateLimitService, userRepository, userDetailsRepository, new UsageRouteMatcher(applicationProperties), cacheManager, cacheNameResolver, meterRegistry);
+    }
+
+    @AfterEach
+    public void teardown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private static BandwidthProperties bandwidth(long capacity) {
+        BandwidthProperties bandwidth = new BandwidthProperties();
+        bandwidth.setCapacity(capacity);
+        bandwidth.setRefillTokens(1);
+        bandwidth.setRefillPeriodSeconds(3600);
+        return bandwidth;
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/annotate/mutations/byProteinChange");
+        request.setRemoteAddr(remoteAddr);
+        return request;
+    }
+
+    private void authenticate(UUID token) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+            LOGIN, token, Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))
+        ));
+    }
+
+    private double allowed(String tier) {
+        return meterRegistry.counter("oncokb.rate.limit.proxy", "tier", tier, "route", "other", "result", "allowed").count();
+    }
+
+    @Test
+    public void tierIsTheCachedLicenseTypeUntilTheUserCachesAreEvicted() {
+        authenticate(UUID.randomUUID());
+
+        ConsumptionProbe probe = proxyRateLimitService.tryConsume(request("10.0.0.1"), 1).get();
+        assertThat(probe.getRemainingTokens()).isEqualTo(4);
+        assertThat(allowed(LicenseType.ACADEMIC.name())).isEqualTo(1);
+
+        // A license type without a bandwidth falls back to the default tier, once the cached tier is evicted
+        userDetails.setLicenseType(LicenseType.COMMERCIAL);
+        proxyRateLimitService.tryConsume(request("10.0.0.1"), 1);
+        assertThat(allowed(LicenseType.ACADEMIC.name())).isEqualTo(2);
+        Mockito.verify(userRepository, Mockito.times(1)).findOneWithAuthoritiesByLogin(LOGIN);
+
+        cacheManager.getCache(cacheNameResolver.getCacheName(RATE_LIMIT_TIER_BY_LOGIN_CACHE)).evict(LOGIN);
+        probe = proxyRateLimitService.tryConsume(request("10.0.0.1"), 1).get();
+        assertThat(probe.getRemainingTokens()).isEqualTo(1);
+        assertThat(allowed(ProxyRateLimitService.DEFAULT_TIER)).isEqualTo(1);
+    }
+
+    @Test
+    public void tokensHaveTheirOwnBuckets() {
+        authenticate(UUID.randomUUID());
+        assertThat(proxyRateLimitService.tryConsume(request("10.0.0.1"), 5).get().isConsumed()).isTrue();
+        assertThat(proxyRateLimitService.tryConsume(request("10.0.0.2"), 1).get().isConsumed()).isFalse();
+
+        authenticate(UUID.randomUUID());
+        assertThat(proxyRateLimitService.tryConsume(request("10.0.0.1"), 1).get().isConsumed()).isTrue();
+    }
+
+    @Test
+    public void anonymousRequestsAreLimitedByRemoteAddress() {
+        assertThat(proxyRateLimitService.tryConsume(request("10.0.0.1"), 1).get().isConsumed()).isTrue();
+        assertThat(proxyRateLimitService.tryConsume(request("10.0.0.1"), 1).get().isConsumed()).isTrue();
+        assertThat(proxyRateLimitService.tryConsume(request("10.0.0.1"), 1).get().isConsumed()).isFalse();
+
+        // The forwarded headers are set by the client, they do not give a new bucket
+        MockHttpServletRequest forwarded = request("10.0.0.1");
+        forwarded.addHeader("X-Forwarded-For", "10.0.0.3");
+        assertThat(proxyRateLimitService.tryConsume(forwarded, 1).get().isConsumed()).isFalse();
+
+        assertThat(proxyRateLimitService.tryConsume(request("10.0.0.2"), 1).get().isConsumed()).isTrue();
+        assertThat(allowed(ProxyRateLimitService.DEFAULT_TIER)).isEqualTo(3);
+    }
+
+    @Test
+    public void adminsAreNotLimited() {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+            LOGIN, UUID.randomUUID(), Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.ADMIN))
+        ));
+
+        assertThat(proxyRateLimitService.tryConsume(request("10.0.0.1"), 100)).isEmpty();
+    }
+}
@@ -0,0 +1,150 @@
+package org.mskcc.cbio.oncokb.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.springframework.http.HttpHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for the {@link ProxyRequestCoalescer} class.
+ */
+public class ProxyRequestCoalescerUnitTest {
+    private static final String KEY = "GET /api/v1/genes/lookup?query=BRAF";
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final CountDownLatch leaderStarted = new CountDownLatch(1);
+
+    private final CountDownLatch leaderReleased = new CountDownLatch(1);
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private ApplicationProperties applicationProperties;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ProxyRequestCoalescer proxyRequestCoalescer;
+
+    @BeforeEach
+    public void setup() {
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getRequestCoalescing().setEnabled(true);
+        meterRegistry = new SimpleMeterRegistry();
+        proxyRequestCoalescer = new ProxyRequestCoalescer(applicationProperties, meterRegistry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        leaderReleased.countDown();
+        executor.shutdownNow();
+    }
+
+    private static ProxyResponse response(String body) {
+        return new ProxyResponse(200, new HttpHeaders(), body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Future<ProxyResponse> startLeader(ProxyRequestCoalescer.UpstreamCall call) throws InterruptedException {
+        Future<ProxyResponse> leader = executor.submit(() -> proxyRequestCoalescer.execute(KEY, () -> {
+            calls.incrementAndGet();
+            leaderStarted.countDown();
+            leaderReleased.await(10, TimeUnit.SECONDS);
+            return call.execute();
+        }));
+        assertThat(leaderStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        return leader;
+    }
+
+    private Future<ProxyResponse> startWaiter(ProxyRequestCoalescer.UpstreamCall call) {
+        return executor.submit(() -> proxyRequestCoalescer.execute(KEY, () -> {
+            calls.incrementAndGet();
+            return call.execute();
+        }));
+    }
+
+    private double count(String result) {
+        return meterRegistry.counter("oncokb.proxy.coalescing", "result", result).count();
+    }
+
+    @Test
+    public void identicalConcurrentRequestsShareOneCall() throws Exception {
+        Future<ProxyResponse> leader = startLeader(() -> response("shared"));
+        List<Future<ProxyResponse>> waiters = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            waiters.add(startWaiter(() -> response("own")));
+        }
+        // Let the waiters reach the shared call
+        Thread.sleep(200);
+        leaderReleased.countDown();
+
+        assertThat(new String(leader.get(10, TimeUnit.SECONDS).getBody(), StandardCharsets.UTF_8)).isEqualTo("shared");
+        for (Future<ProxyResponse> waiter : waiters) {
+            assertThat(waiter.get(10, TimeUnit.SECONDS)).isSameAs(leader.get());
+        }
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(count("forwarded")).isEqualTo(1);
+        assertThat(count("coalesced")).isEqualTo(3);
+
+        // The call is not shared once completed
+        assertThat(new String(proxyRequestCoalescer.execute(KEY, () -> response("next")).getBody(), StandardCharsets.UTF_8)).isEqualTo("next");
+    }
+
+    @Test
+    public void waiterCallsUpstreamOnItsOwnAfterTheTimeout() throws Exception {
+        applicationProperties.getRequestCoalescing().setWaitTimeoutMillis(50);
+        Future<ProxyResponse> leader = startLeader(() -> response("shared"));
+
+        ProxyResponse waiterResponse = startWaiter(() -> response("own")).get(10, TimeUnit.SECONDS);
+
+        assertThat(new String(waiterResponse.getBody(), StandardCharsets.UTF_8)).isEqualTo("own");
+        assertThat(count("timeout")).isEqualTo(1);
+        leaderReleased.countDown();
+        assertThat(new String(leader.get(10, TimeUnit.SECONDS).getBody(), StandardCharsets.UTF_8)).isEqualTo("shared");
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void waitersFailLikeTheSharedCall() throws Exception {
+        Future<ProxyResponse> leader = startLeader(() -> {
+            throw new UpstreamUnavailableException("oncokb core is unavailable", 5);
+        });
+        Future<ProxyResponse> waiter = startWaiter(() -> response("own"));
+        Thread.sleep(200);
+        leaderReleased.countDown();
+
+        assertThatThrownBy(() -> leader.get(10, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(UpstreamUnavailableException.class);
+        // Not wrapped, so it is still answered with 503 and Retry-After
+        assertThatThrownBy(() -> waiter.get(10, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(UpstreamUnavailableException.class);
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void onlyTheConfiguredRoutesAreCoalesced() {
+        assertThat(proxyRequestCoalescer.isCoalescable("/api/v1/genes/lookup")).isTrue();
+        assertThat(proxyRequestCoalescer.isCoalescable("/api/v1/genes/lookup/")).isTrue();
+        assertThat(proxyRequestCoalescer.isCoalescable("/api/v1/genes/lookups")).isFalse();
+        assertThat(proxyRequestCoalescer.isCoalescable("/api/v1/genes")).isFalse();
+
+        applicationProperties.getRequestCoalescing().setEnabled(false);
+        assertThat(proxyRequestCoalescer.isCoalescable("/api/v1/genes/lookup")).isFalse();
+    }
+}
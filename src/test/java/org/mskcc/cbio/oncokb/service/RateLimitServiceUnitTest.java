@@ -0,0 +1,132 @@
+package org.mskcc.cbio.oncokb.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.github.bucket4j.Bucket;
+import io.github.jhipster.config.JHipsterProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.application.BandwidthProperties;
+import org.mskcc.cbio.oncokb.config.application.RateLimitProperties;
+import org.mskcc.cbio.oncokb.config.cache.CacheNameResolver;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link RateLimitService} class, with the local buckets used when redis is not available.
+ */
+public class RateLimitServiceUnitTest {
+    private ApplicationProperties applicationProperties;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setup() {
+        applicationProperties = new ApplicationProperties();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private RateLimitService createRateLimitService() {
+        return new RateLimitService(Optional.empty(), new CacheNameResolver(applicationProperties), new JHipsterProperties(), applicationProperties, meterRegistry);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Cache<String, Bucket> getCache(RateLimitService rateLimitService, String name) {
+        return (Cache<String, Bucket>) ReflectionTestUtils.getField(rateLimitService, name);
+    }
+
+    private static long getExpiresAfterAccessSeconds(Cache<String, Bucket> cache) {
+        return cache.policy().expireAfterAccess().get().getExpiresAfter(TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void localBucketsAreBoundedInMemory() {
+        applicationProperties.getRateLimit().setLocalBucketsMaxMemoryBytes(16 * 1024);
+        RateLimitService rateLimitService = createRateLimitService();
+
+        for (int i = 0; i < 1000; i++) {
+            rateLimitService.resolveBucket("client-" + i).tryConsume(1);
+        }
+        getCache(rateLimitService, "cache").cleanUp();
+
+        assertThat(meterRegistry.get("oncokb.rate.limit.buckets.memory").gauge().value()).isLessThanOrEqualTo(16 * 1024);
+        assertThat(meterRegistry.get("cache.evictions").tag("cache", "rateLimitBuckets").functionCounter().count()).isPositive();
+    }
+
+    @Test
+    public void bucketIsKeptWhileItIsUsed() {
+        RateLimitService rateLimitService = createRateLimitService();
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(rateLimitService.resolveBucket("client").tryConsume(1)).isTrue();
+        }
+
+        // The default bandwidth holds 10 tokens, the same bucket is resolved on every request
+        assertThat(rateLimitService.resolveBucket("client").tryConsume(1)).isFalse();
+        assertThat(rateLimitService.resolveBucket("other-client").tryConsume(1)).isTrue();
+    }
+
+    @Test
+    public void idleBucketsExpireNoSoonerThanTheyRefill() {
+        applicationProperties.getRateLimit().setLocalBucketsIdleSeconds(60);
+        BandwidthProperties bandwidth = new BandwidthProperties();
+        // Refilled from empty in 100 / 10 * 300 seconds
+        bandwidth.setCapacity(100);
+        bandwidth.setRefillTokens(10);
+        bandwidth.setRefillPeriodSeconds(300);
+        applicationProperties.getRateLimit().getProxyTiers().put(ProxyRateLimitService.DEFAULT_TIER, bandwidth);
+
+        RateLimitService rateLimitService = createRateLimitService();
+
+        assertThat(getExpiresAfterAccessSeconds(getCache(rateLimitService, "cache"))).isEqualTo(3000);
+    }
+
+    @Test
+    public void idleBucketsExpireAfterTheConfiguredTimeOnceRefilled() {
+        // The default bandwidth is refilled in a second
+        applicationProperties.getRateLimit().setLocalBucketsIdleSeconds(60);
+
+        RateLimitService rateLimitService = createRateLimitService();
+
+        assertThat(getExpiresAfterAccessSeconds(getCache(rateLimitService, "cache"))).isEqualTo(60);
+    }
+
+    @Test
+    public void bucketProxiesAreNotBoundedBySize() {
+        applicationProperties.getRateLimit().setLocalBucketsIdleSeconds(60);
+        applicationProperties.getRateLimit().setRedisSyncMaxUnsynchronizedMillis(120000);
+        RateLimitService rateLimitService = createRateLimitService();
+        Cache<String, Bucket> proxyCache = getCache(rateLimitService, "proxyCache");
+
+        // An evicted proxy would drop its unsynchronized consumption
+        assertThat(proxyCache).isNotSameAs(getCache(rateLimitService, "cache"));
+        assertThat(proxyCache.policy().eviction()).isEmpty();
+        assertThat(getExpiresAfterAccessSeconds(proxyCache)).isEqualTo(120);
+
+        // The local buckets do not take their place
+        rateLimitService.resolveBucket("client").tryConsume(1);
+        assertThat(proxyCache.estimatedSize()).isZero();
+    }
+
+    @Test
+    public void redisSyncModeIsMappedToItsOptimization() {
+        RateLimitProperties properties = applicationProperties.getRateLimit();
+
+        properties.setRedisSync(RateLimitProperties.RedisSyncMode.NONE);
+        assertThat(RateLimitService.getRedisSyncOptimization(properties)).isNull();
+
+        properties.setRedisSync(RateLimitProperties.RedisSyncMode.BATCHING);
+        assertThat(RateLimitService.getRedisSyncOptimization(properties).getClass().getSimpleName()).isEqualTo("BatchingOptimization");
+
+        properties.setRedisSync(RateLimitProperties.RedisSyncMode.DELAYING);
+        assertThat(RateLimitService.getRedisSyncOptimization(properties).getClass().getSimpleName()).isEqualTo("DelayOptimization");
+
+        properties.setRedisSync(RateLimitProperties.RedisSyncMode.PREDICTING);
+        assertThat(RateLimitService.getRedisSyncOptimization(properties).getClass().getSimpleName()).isEqualTo("PredictiveOptimization");
+    }
+}
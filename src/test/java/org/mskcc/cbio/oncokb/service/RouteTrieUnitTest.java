@@ -0,0 +1,31 @@
+package org.mskcc.cbio.oncokb.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link RouteTrie} class.
+ */
+public class RouteTrieUnitTest {
+
+    private final RouteTrie routeTrie = new RouteTrie(Arrays.asList("/api/v1/info", "/api/v1/levels", "/api/v1/utils/"));
+
+    @Test
+    public void matchesThePrefixes() {
+        assertThat(routeTrie.match("/api/v1/infoXYZ")).isEqualTo("/api/v1/info");
+        assertThat(routeTrie.match("/api/v1/annotate")).isNull();
+    }
+
+    @Test
+    public void matchesWholePathSegments() {
+        assertThat(routeTrie.matchSegments("/api/v1/info")).isEqualTo("/api/v1/info");
+        assertThat(routeTrie.matchSegments("/api/v1/levels/sensitive")).isEqualTo("/api/v1/levels");
+        assertThat(routeTrie.matchSegments("/api/v1/utils/allCuratedGenes")).isEqualTo("/api/v1/utils/");
+        assertThat(routeTrie.matchSegments("/api/v1/infoXYZ")).isNull();
+        assertThat(routeTrie.matchSegments("/api/v1/utils")).isNull();
+        assertThat(routeTrie.matchSegments(null)).isNull();
+    }
+}
@@ -0,0 +1,158 @@
+package org.mskcc.cbio.oncokb.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.domain.Token;
+import org.mskcc.cbio.oncokb.domain.TokenStats;
+import org.mskcc.cbio.oncokb.security.AuthoritiesConstants;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+
+/**
+ * Test class for the {@link TokenUsageRecorder} class.
+ */
+public class TokenUsageRecorderUnitTest {
+    private final UUID uuid = UUID.randomUUID();
+
+    private final UUID otherUuid = UUID.randomUUID();
+
+    private final List<List<TokenStats>> inserts = new ArrayList<>();
+
+    private TokenService tokenService;
+
+    private TokenStatsService tokenStatsService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private TokenUsageRecorder tokenUsageRecorder;
+
+    @BeforeEach
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getTokenStats().setMaxBuckets(1);
+
+        Token token = new Token();
+        token.setToken(uuid);
+        Token otherToken = new Token();
+        otherToken.setToken(otherUuid);
+        tokenService = Mockito.mock(TokenService.class);
+        Mockito.when(tokenService.findByToken(uuid)).thenReturn(Optional.of(token));
+        Mockito.when(tokenService.findByToken(otherUuid)).thenReturn(Optional.of(otherToken));
+
+        tokenStatsService = Mockito.mock(TokenStatsService.class);
+        Mockito.doAnswer(i -> {
+            inserts.add(new ArrayList<>(i.getArgument(0)));
+            return null;
+        }).when(tokenStatsService).insertAll(any());
+
+        meterRegistry = new SimpleMeterRegistry();
+        tokenUsageRecorder = new TokenUsageRecorder(applicationProperties, tokenService, tokenStatsService, new UsageRouteMatcher(applicationProperties), meterRegistry);
+
+        authenticate(uuid);
+    }
+
+    private void authenticate(UUID token) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+            "user", token, Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))
+        ));
+    }
+
+    @AfterEach
+    public void teardown() {
+        SecurityContextHolder.clearContext();
+        tokenUsageRecorder.destroy();
+    }
+
+    @Test
+    public void failedBatchIsRetriedWithTheUsageRecordedSince() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/annotate/mutations/byProteinChange");
+        request.setRemoteAddr("10.0.0.1");
+
+        Mockito.doThrow(new RuntimeException("database is down")).when(tokenStatsService).insertAll(any());
+        tokenUsageRecorder.record(request, 2);
+        tokenUsageRecorder.flush(true);
+        assertThat(inserts).isEmpty();
+
+        Mockito.doAnswer(i -> {
+            inserts.add(new ArrayList<>(i.getArgument(0)));
+            return null;
+        }).when(tokenStatsService).insertAll(any());
+        tokenUsageRecorder.record(request, 3);
+        tokenUsageRecorder.flush(true);
+
+        assertThat(inserts).hasSize(1);
+        assertThat(inserts.get(0)).hasSize(1);
+        assertThat(inserts.get(0).get(0).getUsageCount()).isEqualTo(5);
+        assertThat(inserts.get(0).get(0).getAccessIp()).isEqualTo("10.0.0.1");
+        assertThat(meterRegistry.counter("oncokb.token.stats.rows", "result", "dropped").count()).isZero();
+    }
+
+    @Test
+    public void failedBatchIsDroppedAndCountedWhenTheBucketsAreFull() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/annotate/mutations/byProteinChange");
+        request.setRemoteAddr("10.0.0.1");
+        MockHttpServletRequest otherRequest = new MockHttpServletRequest("GET", "/api/v1/annotate/mutations/byProteinChange");
+        otherRequest.setRemoteAddr("10.0.0.2");
+
+        Mockito.doAnswer(i -> {
+            // The single open bucket is taken by another client while the insert runs
+            tokenUsageRecorder.record(otherRequest, 1);
+            throw new RuntimeException("database is down");
+        }).when(tokenStatsService).insertAll(any());
+        tokenUsageRecorder.record(request, 2);
+        tokenUsageRecorder.flush(true);
+
+        assertThat(meterRegistry.counter("oncokb.token.stats.rows", "result", "dropped").count()).isEqualTo(1);
+    }
+
+    @Test
+    public void usageIsAggregatedPerTokenAndDay() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getTokenStats().setAggregationWindowSeconds((int) TimeUnit.DAYS.toSeconds(1));
+        TokenUsageRecorder dailyRecorder = new TokenUsageRecorder(applicationProperties, tokenService, tokenStatsService, new UsageRouteMatcher(applicationProperties), meterRegistry);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/annotate/mutations/byProteinChange");
+        request.setRemoteAddr("10.0.0.1");
+        try {
+            dailyRecorder.record(request, 1);
+            dailyRecorder.record(request, 2);
+            authenticate(otherUuid);
+            dailyRecorder.record(request, 4);
+
+            // The current day is still open
+            dailyRecorder.flush(false);
+            assertThat(inserts).isEmpty();
+
+            dailyRecorder.flush(true);
+        } finally {
+            dailyRecorder.destroy();
+        }
+
+        assertThat(inserts).hasSize(1);
+        Map<UUID, TokenStats> rows = inserts.get(0).stream().collect(Collectors.toMap(row -> row.getToken().getToken(), row -> row));
+        assertThat(rows).containsOnlyKeys(uuid, otherUuid);
+        assertThat(rows.get(uuid).getUsageCount()).isEqualTo(3);
+        assertThat(rows.get(otherUuid).getUsageCount()).isEqualTo(4);
+        // Recorded at the start of the day
+        assertThat(rows.get(uuid).getAccessTime().toEpochMilli() % TimeUnit.DAYS.toMillis(1)).isZero();
+        assertThat(rows.get(otherUuid).getAccessTime()).isEqualTo(rows.get(uuid).getAccessTime());
+        assertThat(meterRegistry.counter("oncokb.token.stats.rows", "result", "persisted").count()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,89 @@
+package org.mskcc.cbio.oncokb.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link UpstreamCircuitBreaker} class.
+ */
+public class UpstreamCircuitBreakerUnitTest {
+
+    private static final long OPEN_NANOS = 1000;
+
+    private static void call(UpstreamCircuitBreaker circuitBreaker, boolean success, long nanoTime) {
+        long epoch = circuitBreaker.tryAcquire(nanoTime);
+        assertThat(epoch).isNotNegative();
+        circuitBreaker.onResult(success, epoch, nanoTime);
+    }
+
+    @Test
+    public void opensWhenTheFailureRateReachesTheThreshold() {
+        UpstreamCircuitBreaker circuitBreaker = new UpstreamCircuitBreaker(50, 10, 4, OPEN_NANOS);
+        call(circuitBreaker, false, 0);
+        call(circuitBreaker, false, 0);
+        call(circuitBreaker, true, 0);
+        // Not enough calls yet
+        assertThat(circuitBreaker.getState()).isEqualTo(UpstreamCircuitBreaker.State.CLOSED);
+
+        call(circuitBreaker, true, 0);
+        assertThat(circuitBreaker.getState()).isEqualTo(UpstreamCircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.tryAcquire(OPEN_NANOS - 1)).isNegative();
+        assertThat(circuitBreaker.getRemainingOpenNanos(OPEN_NANOS - 1)).isEqualTo(1);
+    }
+
+    @Test
+    public void oldCallsLeaveTheSlidingWindow() {
+        UpstreamCircuitBreaker circuitBreaker = new UpstreamCircuitBreaker(50, 4, 4, OPEN_NANOS);
+        call(circuitBreaker, false, 0);
+        for (int i = 0; i < 10; i++) {
+            call(circuitBreaker, true, 0);
+        }
+        call(circuitBreaker, false, 0);
+        assertThat(circuitBreaker.getState()).isEqualTo(UpstreamCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void letsASingleTrialCallThroughOnceOpen() {
+        UpstreamCircuitBreaker circuitBreaker = new UpstreamCircuitBreaker(50, 2, 2, OPEN_NANOS);
+        call(circuitBreaker, false, 0);
+        call(circuitBreaker, false, 0);
+        assertThat(circuitBreaker.getState()).isEqualTo(UpstreamCircuitBreaker.State.OPEN);
+
+        long trial = circuitBreaker.tryAcquire(OPEN_NANOS);
+        assertThat(trial).isNotNegative();
+        assertThat(circuitBreaker.getState()).isEqualTo(UpstreamCircuitBreaker.State.HALF_OPEN);
+        assertThat(circuitBreaker.tryAcquire(OPEN_NANOS)).isNegative();
+
+        // The trial failed, the circuit opens again
+        circuitBreaker.onResult(false, trial, OPEN_NANOS);
+        assertThat(circuitBreaker.tryAcquire(OPEN_NANOS + 1)).isNegative();
+
+        trial = circuitBreaker.tryAcquire(2 * OPEN_NANOS);
+        assertThat(trial).isNotNegative();
+        circuitBreaker.onResult(true, trial, 2 * OPEN_NANOS);
+        assertThat(circuitBreaker.getState()).isEqualTo(UpstreamCircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.tryAcquire(2 * OPEN_NANOS)).isNotNegative();
+    }
+
+    @Test
+    public void ignoresTheCallsStartedBeforeTheTrial() {
+        UpstreamCircuitBreaker circuitBreaker = new UpstreamCircuitBreaker(50, 2, 2, OPEN_NANOS);
+        long slowCall = circuitBreaker.tryAcquire(0);
+        call(circuitBreaker, false, 0);
+        call(circuitBreaker, false, 0);
+        long trial = circuitBreaker.tryAcquire(OPEN_NANOS);
+        assertThat(circuitBreaker.getState()).isEqualTo(UpstreamCircuitBreaker.State.HALF_OPEN);
+
+        // The call started while closed succeeds during the trial, it neither closes the circuit nor frees the trial
+        circuitBreaker.onResult(true, slowCall, OPEN_NANOS);
+        assertThat(circuitBreaker.getState()).isEqualTo(UpstreamCircuitBreaker.State.HALF_OPEN);
+        assertThat(circuitBreaker.tryAcquire(OPEN_NANOS)).isNegative();
+
+        circuitBreaker.onResult(false, trial, OPEN_NANOS);
+        assertThat(circuitBreaker.getState()).isEqualTo(UpstreamCircuitBreaker.State.OPEN);
+        // Nor does it count once the circuit opened again
+        circuitBreaker.onResult(true, slowCall, OPEN_NANOS + 1);
+        assertThat(circuitBreaker.getState()).isEqualTo(UpstreamCircuitBreaker.State.OPEN);
+    }
+}
@@ -0,0 +1,162 @@
+package org.mskcc.cbio.oncokb.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import org.mskcc.cbio.oncokb.config.application.ResilienceProperties;
+import org.springframework.http.HttpHeaders;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the hedging of the {@link UpstreamResilience} class.
+ */
+public class UpstreamResilienceUnitTest {
+    private static final String ROUTE = "/api/v1/genes/lookup";
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    private ApplicationProperties applicationProperties;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ApiProxyClientPool apiProxyClientPool;
+
+    private UpstreamResilience upstreamResilience;
+
+    @BeforeEach
+    public void setup() {
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.setApiProxyUrl("http://localhost");
+        ResilienceProperties properties = applicationProperties.getResilience();
+        properties.setHedgingEnabled(true);
+        properties.setHedgingMinDelayMillis(50);
+        meterRegistry = new SimpleMeterRegistry();
+        apiProxyClientPool = new ApiProxyClientPool(applicationProperties, meterRegistry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        released.countDown();
+        executor.shutdownNow();
+        upstreamResilience.destroy();
+        apiProxyClientPool.destroy();
+    }
+
+    private void createUpstreamResilience(int hedgingThreads) {
+        applicationProperties.getResilience().setHedgingThreads(hedgingThreads);
+        upstreamResilience = new UpstreamResilience(applicationProperties, apiProxyClientPool, meterRegistry);
+    }
+
+    private static ProxyResponse response(String body) {
+        return new ProxyResponse(200, new HttpHeaders(), body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String body(ProxyResponse response) {
+        return new String(response.getBody(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Registers its request, then waits until it is aborted or released.
+     */
+    private ProxyResponse slowCall(Consumer<HttpUriRequest> onRequest, HttpGet request) throws IOException {
+        onRequest.accept(request);
+        try {
+            while (!request.isAborted() && !released.await(10, TimeUnit.MILLISECONDS)) {
+                // Waiting like a slow response of oncokb core
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (request.isAborted()) {
+            throw new IOException("Request aborted");
+        }
+        return response("slow");
+    }
+
+    @Test
+    public void hedgesOnlyTheConfiguredRoutes() {
+        createUpstreamResilience(2);
+
+        assertThat(upstreamResilience.getHedgingRoute("/api/v1/genes/lookup")).isEqualTo(ROUTE);
+        assertThat(upstreamResilience.getHedgingRoute("/api/v1/genes/lookup/")).isEqualTo(ROUTE);
+        assertThat(upstreamResilience.getHedgingRoute("/api/v1/genes/lookups")).isNull();
+        assertThat(upstreamResilience.getHedgingRoute("/api/v1/genes")).isNull();
+    }
+
+    @Test
+    public void firstResponseWinsAndTheOtherRequestIsAborted() throws IOException {
+        createUpstreamResilience(2);
+        AtomicInteger calls = new AtomicInteger();
+        HttpGet slowRequest = new HttpGet("http://localhost" + ROUTE);
+
+        ProxyResponse response = upstreamResilience.hedge(ROUTE, onRequest -> calls.incrementAndGet() == 1
+            ? slowCall(onRequest, slowRequest)
+            : response("fast"));
+
+        assertThat(body(response)).isEqualTo("fast");
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(slowRequest.isAborted()).isTrue();
+        assertThat(meterRegistry.counter("oncokb.proxy.hedged.requests").count()).isEqualTo(1);
+    }
+
+    @Test
+    public void fastResponseIsNotHedged() throws IOException {
+        createUpstreamResilience(2);
+        AtomicInteger calls = new AtomicInteger();
+
+        ProxyResponse response = upstreamResilience.hedge(ROUTE, onRequest -> {
+            calls.incrementAndGet();
+            return response("fast");
+        });
+
+        assertThat(body(response)).isEqualTo("fast");
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(meterRegistry.counter("oncokb.proxy.hedged.requests").count()).isZero();
+    }
+
+    @Test
+    public void fullPoolRunsTheCallWithoutHedging() throws Exception {
+        // The pool has no queue, a call it rejects runs on the calling thread and is not hedged
+        createUpstreamResilience(1);
+        HttpGet busyRequest = new HttpGet("http://localhost" + ROUTE);
+        CountDownLatch busy = new CountDownLatch(1);
+        Future<ProxyResponse> busyHedge = executor.submit(() -> upstreamResilience.hedge(ROUTE, onRequest -> {
+            busy.countDown();
+            return slowCall(onRequest, busyRequest);
+        }));
+        assertThat(busy.await(10, TimeUnit.SECONDS)).isTrue();
+
+        AtomicReference<Thread> callThread = new AtomicReference<>();
+        ProxyResponse response = upstreamResilience.hedge(ROUTE, onRequest -> {
+            callThread.set(Thread.currentThread());
+            return response("inline");
+        });
+
+        assertThat(body(response)).isEqualTo("inline");
+        assertThat(callThread.get()).isSameAs(Thread.currentThread());
+
+        // The busy hedge cannot send its second request either, it waits for the first one
+        released.countDown();
+        assertThat(body(busyHedge.get(10, TimeUnit.SECONDS))).isEqualTo("slow");
+        assertThat(busyRequest.isAborted()).isFalse();
+        assertThat(meterRegistry.counter("oncokb.proxy.hedged.requests").count()).isZero();
+    }
+}
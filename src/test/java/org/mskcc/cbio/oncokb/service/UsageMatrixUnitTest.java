@@ -0,0 +1,87 @@
+package org.mskcc.cbio.oncokb.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * Test class for the {@link UsageMatrix} class.
+ */
+public class UsageMatrixUnitTest {
+    private final UsageDictionary users = new UsageDictionary();
+
+    private final UsageDictionary endpoints = new UsageDictionary();
+
+    @Test
+    public void sumsTheCountsOfTheSameRow() {
+        UsageMatrix.Builder builder = UsageMatrix.builder(UsageMatrix.Period.DAY, users, endpoints);
+        // More rows than the insertion sort threshold, in reverse order
+        for (int day = 28; day >= 1; day--) {
+            builder.add("b@example.com", String.format("2021-02-%02d", day), "/api/v1/info", day);
+            builder.add("a@example.com", String.format("2021-02-%02d", day), "/api/v1/info", 1);
+        }
+        builder.add("a@example.com", "2021-02-01", "/api/v1/info", 2);
+        UsageMatrix matrix = builder.build();
+
+        assertThat(matrix.size()).isEqualTo(56);
+        assertThat(matrix.getEstimatedBytes()).isGreaterThanOrEqualTo(56 * 16);
+        Map<String, Map<String, Long>> usage = matrix.getUsage("a@example.com");
+        assertThat(usage).hasSize(28);
+        assertThat(usage.get("2021-02-01")).containsEntry("/api/v1/info", 3L);
+        assertThat(matrix.getUsage("b@example.com").get("2021-02-28")).containsEntry("/api/v1/info", 28L);
+    }
+
+    @Test
+    public void findsTheUsersOfAnEndpoint() {
+        UsageMatrix matrix = UsageMatrix.builder(UsageMatrix.Period.MONTH, users, endpoints)
+            .add("a@example.com", "2021-01", "/api/v1/info", 1)
+            .add("b@example.com", "2021-01", "/api/v1/annotate/mutations/byProteinChange", 2)
+            .add("c@example.com", "2021-02", "/api/v1/info", 3)
+            .build();
+
+        assertThat(matrix.getUsers()).containsExactly("a@example.com", "b@example.com", "c@example.com");
+        assertThat(matrix.getUsers("/api/v1/info")).containsExactly("a@example.com", "c@example.com");
+        assertThat(matrix.getUsers("/api/v1/unknown")).isEmpty();
+        Map<String, Map<String, Long>> endpointUsage = matrix.getEndpointUsage("/api/v1/info", Collections.singleton("c@example.com"));
+        assertThat(endpointUsage).containsOnlyKeys("2021-02");
+        assertThat(endpointUsage.get("2021-02")).containsEntry("c@example.com", 3L);
+        assertThat(matrix.hasUser("b@example.com")).isTrue();
+        assertThat(matrix.hasUser("d@example.com")).isFalse();
+    }
+
+    @Test
+    public void findsTheEndpointsUnderAPrefix() {
+        UsageMatrix matrix = UsageMatrix.builder(UsageMatrix.Period.MONTH, users, endpoints)
+            .add("a@example.com", "2021-01", "/api/v1/info", 1)
+            .add("b@example.com", "2021-01", "/api/v1/annotate/mutations/byProteinChange", 2)
+            .add("a@example.com", "2021-02", "/api/v1/annotate/copyNumberAlterations", 3)
+            .add("a@example.com", "2021-02", "/api/v1/annotate/mutations/byProteinChange", 4)
+            .build();
+
+        List<String> annotateEndpoints = matrix.getEndpoints("/api/v1/annotate/");
+        assertThat(annotateEndpoints).containsExactly(
+            "/api/v1/annotate/copyNumberAlterations",
+            "/api/v1/annotate/mutations/byProteinChange"
+        );
+        assertThat(matrix.getEndpoints("/api/v2/")).isEmpty();
+        assertThat(matrix.getUsers(annotateEndpoints)).containsExactlyInAnyOrder("a@example.com", "b@example.com");
+        Map<String, Map<String, Long>> endpointUsage = matrix.getEndpointUsage(annotateEndpoints, null);
+        assertThat(endpointUsage.get("2021-01")).containsOnly(entry("b@example.com", 2L));
+        // Summed over the endpoints
+        assertThat(endpointUsage.get("2021-02")).containsOnly(entry("a@example.com", 7L));
+    }
+
+    @Test
+    public void rejectsAnInvalidPeriod() {
+        UsageMatrix.Builder builder = UsageMatrix.builder(UsageMatrix.Period.YEAR, users, endpoints);
+
+        assertThatThrownBy(() -> builder.add("a@example.com", "2021-01", "/api/v1/info", 1))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,42 @@
+package org.mskcc.cbio.oncokb.service;
+
+import org.junit.jupiter.api.Test;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link UsageRouteMatcher} class.
+ */
+public class UsageRouteMatcherUnitTest {
+
+    @Test
+    public void getUsageBucket() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setTokenUsageCheck("/api/v1/annotate, /api/v1/annotate/mutations,,/api/v1/utils/");
+        UsageRouteMatcher matcher = new UsageRouteMatcher(applicationProperties);
+
+        assertThat(matcher.getUsageBucket("/api/v1/annotate/mutations/byProteinChange")).isEqualTo(Optional.of("/api/v1/annotate/mutations"));
+        assertThat(matcher.getUsageBucket("/api/v1/annotate/structuralVariants")).isEqualTo(Optional.of("/api/v1/annotate"));
+        assertThat(matcher.getUsageBucket("/api/v1/utils/allCuratedGenes")).isEqualTo(Optional.of("/api/v1/utils/"));
+        assertThat(matcher.isUsageChecked("/api/v1/utils")).isFalse();
+        assertThat(matcher.isUsageChecked("/api/v1/info")).isFalse();
+
+        applicationProperties.setTokenUsageCheck("/api/v1/info");
+        assertThat(matcher.isUsageChecked("/api/v1/info")).isTrue();
+        assertThat(matcher.isUsageChecked("/api/v1/annotate/mutations")).isFalse();
+    }
+
+    @Test
+    public void isWhitelisted() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setTokenUsageCheckWhitelist("user1, user2");
+        UsageRouteMatcher matcher = new UsageRouteMatcher(applicationProperties);
+
+        assertThat(matcher.isWhitelisted("user1")).isTrue();
+        assertThat(matcher.isWhitelisted("user2")).isTrue();
+        assertThat(matcher.isWhitelisted("user3")).isFalse();
+    }
+}
@@ -0,0 +1,212 @@
+package org.mskcc.cbio.oncokb.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.mskcc.cbio.oncokb.config.Constants;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * Test class for the {@link UsageSummaryStore} class, with an in-memory S3 stand-in answering with some latency.
+ */
+public class UsageSummaryStoreUnitTest {
+    private static final String PREFIX = Constants.MONTH_USERS_USAGE_SUMMARY_FILE_PREFIX;
+    private static final int LOADER_THREADS = 4;
+    private static final long LATENCY_MILLIS = 20;
+
+    private final Clock clock = Clock.fixed(
+        ZonedDateTime.of(2020, 12, 31, 0, 0, 0, 0, ZoneId.of(Constants.NY_ZONE_ID)).toInstant(),
+        ZoneId.of(Constants.NY_ZONE_ID)
+    );
+
+    private final Map<String, String> objects = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicInteger> downloads = new ConcurrentHashMap<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private UsageSummaryStore usageSummaryStore;
+
+    @BeforeEach
+    public void setup() {
+        S3Service s3Service = Mockito.mock(S3Service.class);
+        Mockito.when(s3Service.listObjects(eq(Constants.ONCOKB_S3_BUCKET), any())).thenAnswer(i -> {
+            String prefix = (String) i.getArguments()[1];
+            Map<String, String> listing = new HashMap<>();
+            objects.forEach((key, content) -> {
+                if (key.startsWith(prefix)) {
+                    listing.put(key, eTag(content));
+                }
+            });
+            return Optional.of(listing);
+        });
+        Mockito.when(s3Service.getObject(eq(Constants.ONCOKB_S3_BUCKET), any())).thenAnswer(i -> {
+            String key = (String) i.getArguments()[1];
+            downloads.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+            int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(LATENCY_MILLIS);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            String content = objects.get(key);
+            if (content == null) {
+                return Optional.empty();
+            }
+            return Optional.of(new ResponseInputStream<>(
+                GetObjectResponse.builder().eTag(eTag(content)).build(),
+                AbortableInputStream.create(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)))
+            ));
+        });
+        Mockito.when(s3Service.getObjectMetadata(eq(Constants.ONCOKB_S3_BUCKET), any())).thenAnswer(i -> {
+            String content = objects.get((String) i.getArguments()[1]);
+            if (content == null) {
+                return Optional.empty();
+            }
+            return Optional.of(HeadObjectResponse.builder().eTag(eTag(content)).build());
+        });
+
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getUsageSummaryCache().setLoaderThreads(LOADER_THREADS);
+        meterRegistry = new SimpleMeterRegistry();
+        usageSummaryStore = new UsageSummaryStore(s3Service, clock, applicationProperties, meterRegistry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        usageSummaryStore.destroy();
+    }
+
+    private static String eTag(String content) {
+        return "\"" + content.hashCode() + "\"";
+    }
+
+    private void putMonth(String month) {
+        objects.put(PREFIX + month + ".json", "{\"user@example.com\":{\"day\":{\"" + month + "-01\":{\"/api/v1/info\":1}}}}");
+    }
+
+    @Test
+    public void loadsTheSummariesConcurrentlyWithinTheBound() {
+        for (int month = 1; month <= 12; month++) {
+            putMonth(String.format("2020-%02d", month));
+            putMonth(String.format("2019-%02d", month));
+        }
+
+        Map<String, Map<String, Long>> days = usageSummaryStore.getUserUsage().getDay().getUsage("user@example.com");
+
+        assertThat(days).hasSize(24);
+        assertThat(maxInFlight.get()).isGreaterThan(1).isLessThanOrEqualTo(LOADER_THREADS);
+        assertThat(days.get("2019-03-01")).containsEntry("/api/v1/info", 1L);
+    }
+
+    @Test
+    public void downloadsEachSummaryOnce() {
+        putMonth("2020-12");
+        putMonth("2020-11");
+
+        UsageData usageData = usageSummaryStore.getUserUsage();
+
+        // Merged once while no summary changes
+        assertThat(usageSummaryStore.getUserUsage()).isSameAs(usageData);
+        assertThat(usageData.getDay().getUsage("user@example.com")).containsOnlyKeys("2020-12-01", "2020-11-01");
+        // The months missing from the listing are never requested
+        assertThat(downloads).hasSize(2);
+        assertThat(downloads.values()).allMatch(count -> count.get() == 1);
+    }
+
+    @Test
+    public void refreshDownloadsTheChangedSummaries() {
+        putMonth("2020-12");
+        putMonth("2020-11");
+        UsageData usageData = usageSummaryStore.getUserUsage();
+
+        objects.put(PREFIX + "2020-12.json", "{\"user@example.com\":{\"day\":{\"2020-12-01\":{\"/api/v1/info\":5}}}}");
+        usageSummaryStore.refresh();
+        UsageData refreshed = usageSummaryStore.getUserUsage();
+
+        assertThat(refreshed).isNotSameAs(usageData);
+        assertThat(refreshed.getDay().getUsage("user@example.com").get("2020-12-01")).containsEntry("/api/v1/info", 5L);
+        assertThat(refreshed.getDay().getUsage("user@example.com").get("2020-11-01")).containsEntry("/api/v1/info", 1L);
+        assertThat(downloads.get(PREFIX + "2020-12.json").get()).isEqualTo(2);
+        // The unchanged summary is only revalidated
+        assertThat(downloads.get(PREFIX + "2020-11.json").get()).isEqualTo(1);
+    }
+
+    @Test
+    public void refreshKeepsTheUnchangedSummaries() {
+        putMonth("2020-12");
+        UsageData usageData = usageSummaryStore.getUserUsage();
+
+        usageSummaryStore.refresh();
+
+        assertThat(usageSummaryStore.getUserUsage()).isSameAs(usageData);
+        assertThat(downloads.get(PREFIX + "2020-12.json").get()).isEqualTo(1);
+        assertThat(meterRegistry.get("oncokb.usage.summary.loads").tag("result", "revalidated").counter().count()).isPositive();
+    }
+
+    @Test
+    public void refreshPicksUpTheCreatedCurrentMonth() {
+        putMonth("2020-11");
+        assertThat(usageSummaryStore.getUserUsage().getDay().getUsage("user@example.com")).containsOnlyKeys("2020-11-01");
+
+        putMonth("2020-12");
+        usageSummaryStore.refresh();
+
+        assertThat(usageSummaryStore.getUserUsage().getDay().getUsage("user@example.com")).containsOnlyKeys("2020-12-01", "2020-11-01");
+    }
+
+    @Test
+    public void readsTheUsageOfEachPeriod() {
+        objects.put(Constants.YEAR_USERS_USAGE_SUMMARY_FILE_PREFIX + "2020.json",
+            "{\"user@example.com\":{\"year\":{\"/api/v1/info\":3},\"month\":{\"2020-12\":{\"/api/v1/info\":2},\"bad\":{\"/api/v1/info\":1}}}}");
+        putMonth("2020-12");
+        objects.put(Constants.YEAR_RESOURCES_USAGE_SUMMARY_FILE_PREFIX + "2020.json",
+            "{\"year\":{\"/api/v1/info\":3},\"month\":null}");
+
+        UsageData userUsage = usageSummaryStore.getUserUsage();
+        UsageData resourceUsage = usageSummaryStore.getResourceUsage();
+
+        assertThat(userUsage.getYear().getUsers()).containsExactly("user@example.com");
+        assertThat(userUsage.getYear().getUsage("user@example.com").get("2020")).containsEntry("/api/v1/info", 3L);
+        // The invalid month is skipped
+        assertThat(userUsage.getMonth().getUsage("user@example.com")).containsOnlyKeys("2020-12");
+        assertThat(userUsage.getDay().getEndpointUsage("/api/v1/info", null).get("2020-12-01")).containsEntry("user@example.com", 1L);
+        assertThat(resourceUsage.getYear().getUsage(UsageSummaryStore.RESOURCE_USER).get("2020")).containsEntry("/api/v1/info", 3L);
+        assertThat(resourceUsage.getMonth().size()).isZero();
+    }
+
+    @Test
+    public void recordsTheTimeOfEachPhase() {
+        putMonth("2020-12");
+
+        usageSummaryStore.getUserUsage();
+
+        for (String phase : Arrays.asList("list", "fetch", "parse", "merge")) {
+            assertThat(meterRegistry.get("oncokb.usage.summary.load").tag("phase", phase).timer().count()).isPositive();
+        }
+    }
+}
@@ -2,14 +2,21 @@ package org.mskcc.cbio.oncokb.service;
 
 import org.mskcc.cbio.oncokb.OncokbPublicApp;
 import org.mskcc.cbio.oncokb.config.Constants;
+import org.mskcc.cbio.oncokb.domain.Company;
 import org.mskcc.cbio.oncokb.domain.Token;
 import org.mskcc.cbio.oncokb.domain.User;
 import org.mskcc.cbio.oncokb.domain.enumeration.LicenseType;
+import org.mskcc.cbio.oncokb.repository.CompanyRepository;
+import org.mskcc.cbio.oncokb.repository.UserDetailsRepository;
 import org.mskcc.cbio.oncokb.repository.UserRepository;
+import org.mskcc.cbio.oncokb.security.uuid.TokenProvider;
 import org.mskcc.cbio.oncokb.service.dto.UserDTO;
+import org.mskcc.cbio.oncokb.service.dto.UserIdsDTO;
 import org.mskcc.cbio.oncokb.service.dto.useradditionalinfo.AdditionalInfoDTO;
 import org.mskcc.cbio.oncokb.service.dto.useradditionalinfo.TrialAccount;
 import org.mskcc.cbio.oncokb.service.mapper.UserMapper;
+import org.mskcc.cbio.oncokb.web.rest.CompanyResourceIT;
+import org.mskcc.cbio.oncokb.web.rest.UserDetailsResourceIT;
 
 import io.github.jhipster.security.RandomUtil;
 import org.apache.commons.lang3.RandomStringUtils;
@@ -26,12 +33,14 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.mysql.cj.conf.ConnectionUrlParser.Pair;
 
+import javax.persistence.EntityManager;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -65,6 +74,15 @@ public class UserServiceIT {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserDetailsRepository userDetailsRepository;
+
+    @Autowired
+    private CompanyRepository companyRepository;
+
+    @Autowired
+    private EntityManager em;
+
     @Autowired
     private UserService userService;
 
@@ -74,6 +92,9 @@ public class UserServiceIT {
     @Autowired
     private TokenService tokenService;
 
+    @Autowired
+    private TokenProvider tokenProvider;
+
     @Autowired
     private AuditingHandler auditingHandler;
 
@@ -479,4 +500,91 @@ public class UserServiceIT {
         );
         testDuplicates(originalUserName, similarNames, dissimilarNames);
     }
-}
\ No newline at end of file
+
+    @Test
+    @Transactional
+    public void assertThatUserIdsAreFoundByEmailsIgnoringCase() {
+        Company company = companyRepository.saveAndFlush(CompanyResourceIT.createEntity(em));
+        user.setEmail("John.Doe@Localhost");
+        userRepository.saveAndFlush(user);
+        userDetailsRepository.saveAndFlush(UserDetailsResourceIT.createEntity(em).user(user).company(company));
+
+        User userWithoutDetails = userRepository.saveAndFlush(createUser("nodetails", "nodetails@localhost"));
+        User userWithoutCompany = userRepository.saveAndFlush(createUser("nocompany", "NoCompany@localhost"));
+        userDetailsRepository.saveAndFlush(UserDetailsResourceIT.createEntity(em).user(userWithoutCompany));
+
+        Map<String, UserIdsDTO> userIds = userService.getUserIdsByEmailsIgnoreCase(Arrays.asList(
+            "JOHN.DOE@LOCALHOST", "john.doe@localhost", "NoDetails@Localhost", "nocompany@localhost", "missing@localhost", null
+        ));
+
+        assertThat(userIds).containsOnlyKeys("JOHN.DOE@LOCALHOST", "john.doe@localhost", "NoDetails@Localhost", "nocompany@localhost");
+        assertThat(userIds.get("JOHN.DOE@LOCALHOST").getId()).isEqualTo(user.getId());
+        assertThat(userIds.get("JOHN.DOE@LOCALHOST").getCompanyId()).isEqualTo(company.getId());
+        assertThat(userIds.get("john.doe@localhost").getId()).isEqualTo(user.getId());
+        assertThat(userIds.get("NoDetails@Localhost").getId()).isEqualTo(userWithoutDetails.getId());
+        assertThat(userIds.get("NoDetails@Localhost").getCompanyId()).isNull();
+        assertThat(userIds.get("nocompany@localhost").getId()).isEqualTo(userWithoutCompany.getId());
+        assertThat(userIds.get("nocompany@localhost").getCompanyId()).isNull();
+    }
+
+    @Test
+    @Transactional
+    public void assertThatUserIdsAreFoundForMoreEmailsThanABatch() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 1001; i++) {
+            users.add(createUser("batchuser" + i, "batchuser" + i + "@localhost"));
+        }
+        userRepository.saveAll(users);
+        userRepository.flush();
+
+        List<String> emails = new ArrayList<>();
+        for (User batchUser : users) {
+            emails.add(batchUser.getEmail().toUpperCase());
+        }
+        Map<String, UserIdsDTO> userIds = userService.getUserIdsByEmailsIgnoreCase(emails);
+
+        assertThat(userIds).hasSize(users.size());
+        for (User batchUser : users) {
+            assertThat(userIds.get(batchUser.getEmail().toUpperCase()).getId()).isEqualTo(batchUser.getId());
+        }
+    }
+
+    @Test
+    @Transactional
+    public void assertThatTokenOfDeletedUserIsRejectedImmediately() {
+        User savedUser = userRepository.saveAndFlush(user);
+        Token token = tokenProvider.createToken(savedUser, Optional.of(Instant.now().plus(1, ChronoUnit.DAYS)), Optional.of(true), Optional.empty());
+        // The principal of the token is cached once authenticated
+        assertThat(tokenProvider.resolveAuthentication(token.getToken())).isPresent();
+
+        userService.deleteUser(savedUser.getLogin());
+
+        assertThat(tokenProvider.resolveAuthentication(token.getToken())).isNotPresent();
+    }
+
+    @Test
+    @Transactional
+    public void assertThatTokenOfDeactivatedUserIsRejectedImmediately() {
+        User savedUser = userRepository.saveAndFlush(user);
+        Token token = tokenProvider.createToken(savedUser, Optional.of(Instant.now().plus(1, ChronoUnit.DAYS)), Optional.of(true), Optional.empty());
+        assertThat(tokenProvider.resolveAuthentication(token.getToken())).isPresent();
+
+        UserDTO userDTO = userMapper.userToUserDTO(savedUser);
+        userDTO.setActivated(false);
+        userService.updateUserAndTokens(userDTO);
+
+        assertThat(tokenProvider.resolveAuthentication(token.getToken())).isNotPresent();
+    }
+
+    private User createUser(String login, String email) {
+        User newUser = new User();
+        newUser.setLogin(login);
+        newUser.setPassword(RandomStringUtils.random(60));
+        newUser.setActivated(true);
+        newUser.setEmail(email);
+        newUser.setFirstName(DEFAULT_FIRSTNAME);
+        newUser.setLastName(DEFAULT_LASTNAME);
+        newUser.setLangKey(DEFAULT_LANGKEY);
+        return newUser;
+    }
+}
@@ -0,0 +1,45 @@
+package org.mskcc.cbio.oncokb.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.OptionalInt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link JsonUtil} utility class.
+ */
+public class JsonUtilUnitTest {
+
+    @Test
+    public void countArrayElements() {
+        assertThat(JsonUtil.countArrayElements("[]")).isEqualTo(OptionalInt.of(0));
+        assertThat(JsonUtil.countArrayElements(" [1, \"a\", null] ")).isEqualTo(OptionalInt.of(3));
+        assertThat(JsonUtil.countArrayElements("[{\"a\":[1,2]},{\"b\":{\"c\":\"]\"}}]")).isEqualTo(OptionalInt.of(2));
+
+        for (int size : new int[]{1, 100, 10000}) {
+            assertThat(JsonUtil.countArrayElements(getBatchBody(size))).isEqualTo(OptionalInt.of(size));
+        }
+    }
+
+    @Test
+    public void countArrayElementsOfInvalidJson() {
+        assertThat(JsonUtil.countArrayElements(null)).isEmpty();
+        assertThat(JsonUtil.countArrayElements("")).isEmpty();
+        assertThat(JsonUtil.countArrayElements("null")).isEmpty();
+        assertThat(JsonUtil.countArrayElements("{\"a\":1}")).isEmpty();
+        assertThat(JsonUtil.countArrayElements("[1,2")).isEmpty();
+        assertThat(JsonUtil.countArrayElements("[1] [2]")).isEmpty();
+    }
+
+    private String getBatchBody(int size) {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                body.append(",");
+            }
+            body.append("{\"gene\":{\"hugoSymbol\":\"BRAF\"},\"alteration\":\"V600E\",\"tumorType\":\"MEL\"}");
+        }
+        return body.append("]").toString();
+    }
+}
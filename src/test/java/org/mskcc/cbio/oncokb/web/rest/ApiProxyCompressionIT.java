@@ -0,0 +1,130 @@
+package org.mskcc.cbio.oncokb.web.rest;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.mskcc.cbio.oncokb.OncokbPublicApp;
+import org.mskcc.cbio.oncokb.service.FakeUpstream;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the compression of the {@link ApiProxy} responses by the server, with a local server standing
+ * in for oncokb core.
+ */
+@SpringBootTest(classes = OncokbPublicApp.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "server.compression.enabled=true",
+    "server.compression.mime-types=application/json",
+    "server.compression.min-response-size=1"
+})
+public class ApiProxyCompressionIT {
+    // Both routes are open to anonymous requests
+    private static final String COMPRESSED_PATH = "/api/v1/levels";
+
+    private static final String UNCOMPRESSED_PATH = "/api/v1/info";
+
+    private static final String BODY = "[{\"levelOfEvidence\":\"LEVEL_1\"}]";
+
+    private static final FakeUpstream upstream = createUpstream();
+
+    @LocalServerPort
+    private int port;
+
+    private static FakeUpstream createUpstream() {
+        try {
+            return new FakeUpstream()
+                .handle(COMPRESSED_PATH, ApiProxyCompressionIT::sendCompressed)
+                .handle(UNCOMPRESSED_PATH, exchange -> {
+                    exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, "application/json");
+                    FakeUpstream.send(exchange, 200, BODY);
+                });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Compresses the body when the request accepts gzip, like oncokb core.
+     */
+    private static void sendCompressed(HttpExchange exchange) throws IOException {
+        String acceptEncoding = exchange.getRequestHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING);
+        exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, "application/json");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            exchange.getResponseHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+                gzipOutputStream.write(BODY.getBytes(StandardCharsets.UTF_8));
+            }
+            FakeUpstream.send(exchange, 200, outputStream.toByteArray());
+        } else {
+            FakeUpstream.send(exchange, 200, BODY);
+        }
+    }
+
+    @DynamicPropertySource
+    static void upstreamProperties(DynamicPropertyRegistry registry) {
+        registry.add("application.api-proxy-url", upstream::getUrl);
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        upstream.close();
+    }
+
+    private HttpURLConnection get(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+        connection.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        return connection;
+    }
+
+    private static List<String> getHeaderValues(HttpURLConnection connection, String name) {
+        return connection.getHeaderFields().entrySet().stream()
+            .filter(header -> name.equalsIgnoreCase(header.getKey()))
+            .flatMap(header -> header.getValue().stream())
+            .collect(Collectors.toList());
+    }
+
+    private static String gunzip(InputStream inputStream) throws IOException {
+        try (GZIPInputStream gzipInputStream = new GZIPInputStream(inputStream)) {
+            return StreamUtils.copyToString(gzipInputStream, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void compressedUpstreamResponseIsNotCompressedAgain() throws IOException {
+        HttpURLConnection connection = get(COMPRESSED_PATH);
+
+        assertThat(connection.getResponseCode()).isEqualTo(200);
+        assertThat(getHeaderValues(connection, HttpHeaders.CONTENT_ENCODING)).containsExactly("gzip");
+        assertThat(String.join(",", getHeaderValues(connection, HttpHeaders.VARY))).containsIgnoringCase(HttpHeaders.ACCEPT_ENCODING);
+        // A single gunzip gives the body back
+        assertThat(gunzip(connection.getInputStream())).isEqualTo(BODY);
+    }
+
+    @Test
+    public void uncompressedUpstreamResponseIsCompressedByTheServer() throws IOException {
+        HttpURLConnection connection = get(UNCOMPRESSED_PATH);
+
+        assertThat(connection.getResponseCode()).isEqualTo(200);
+        assertThat(getHeaderValues(connection, HttpHeaders.CONTENT_ENCODING)).containsExactly("gzip");
+        assertThat(gunzip(connection.getInputStream())).isEqualTo(BODY);
+    }
+}
@@ -0,0 +1,143 @@
+package org.mskcc.cbio.oncokb.web.rest;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.mskcc.cbio.oncokb.OncokbPublicApp;
+import org.mskcc.cbio.oncokb.security.AuthoritiesConstants;
+import org.mskcc.cbio.oncokb.service.FakeUpstream;
+import org.mskcc.cbio.oncokb.service.UserService;
+import org.mskcc.cbio.oncokb.service.dto.UserDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Integration tests for the {@link ApiProxy} REST controller proxying asynchronously, with a local server standing
+ * in for oncokb core.
+ */
+@AutoConfigureMockMvc
+@WithMockUser(value = ApiProxyIT.TEST_USER_LOGIN, authorities = AuthoritiesConstants.ADMIN)
+@SpringBootTest(classes = OncokbPublicApp.class, properties = {
+    "application.async-proxy.enabled=true",
+    "application.async-proxy.max-in-flight-per-route=1"
+})
+public class ApiProxyIT {
+    static final String TEST_USER_LOGIN = "api-proxy-user";
+
+    private static final String SLOW_PATH = "/api/v1/genes";
+
+    private static final FakeUpstream upstream = createUpstream();
+
+    private static volatile CountDownLatch slowResponse = new CountDownLatch(0);
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private MockMvc restApiProxyMockMvc;
+
+    private static FakeUpstream createUpstream() {
+        try {
+            return new FakeUpstream().handle(SLOW_PATH, exchange -> {
+                try {
+                    slowResponse.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                FakeUpstream.send(exchange, 200, "[]");
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void upstreamProperties(DynamicPropertyRegistry registry) {
+        registry.add("application.api-proxy-url", upstream::getUrl);
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        upstream.close();
+    }
+
+    private MvcResult awaitResponse(MvcResult mvcResult) throws Exception {
+        // The deferred response is dispatched first, then its streamed body
+        while (mvcResult.getRequest().isAsyncStarted()) {
+            mvcResult.getAsyncResult(TimeUnit.SECONDS.toMillis(10));
+            mvcResult = restApiProxyMockMvc.perform(asyncDispatch(mvcResult)).andReturn();
+        }
+        return mvcResult;
+    }
+
+    @Test
+    @Transactional
+    public void slowUpstreamDoesNotBlockOtherRequests() throws Exception {
+        UserDTO user = new UserDTO();
+        user.setLogin(TEST_USER_LOGIN);
+        user.setEmail("api-proxy-user@oncokb.org");
+        user.setLangKey("en");
+        user.setAuthorities(Collections.singleton(AuthoritiesConstants.ADMIN));
+        userService.createUser(user, false, Optional.empty(), Optional.empty());
+
+        slowResponse = new CountDownLatch(1);
+        try {
+            MvcResult proxied = restApiProxyMockMvc.perform(get(SLOW_PATH))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+            restApiProxyMockMvc.perform(get("/api/account").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.login").value(TEST_USER_LOGIN));
+            assertThat(proxied.getResponse().isCommitted()).isFalse();
+
+            slowResponse.countDown();
+            MvcResult response = awaitResponse(proxied);
+            assertThat(response.getResponse().getStatus()).isEqualTo(200);
+            assertThat(response.getResponse().getContentAsString()).isEqualTo("[]");
+        } finally {
+            slowResponse.countDown();
+        }
+    }
+
+    @Test
+    public void saturatedRouteIsRejectedWithRetryAfter() throws Exception {
+        slowResponse = new CountDownLatch(1);
+        try {
+            MvcResult inFlight = restApiProxyMockMvc.perform(get(SLOW_PATH))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+            restApiProxyMockMvc.perform(get(SLOW_PATH))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+
+            slowResponse.countDown();
+            assertThat(awaitResponse(inFlight).getResponse().getStatus()).isEqualTo(200);
+            // The permit is released once the call returns
+            awaitResponse(restApiProxyMockMvc.perform(get(SLOW_PATH)).andReturn());
+        } finally {
+            slowResponse.countDown();
+        }
+    }
+}
@@ -12,6 +12,7 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.io.InputStream;
 import java.time.Clock;
 import java.time.LocalDate;
@@ -22,6 +23,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.Map.Entry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -29,16 +31,20 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.mskcc.cbio.oncokb.config.Constants;
+import org.mskcc.cbio.oncokb.config.application.ApplicationProperties;
 import org.mskcc.cbio.oncokb.domain.User;
 import org.mskcc.cbio.oncokb.domain.enumeration.FileExtension;
 import org.mskcc.cbio.oncokb.domain.enumeration.LicenseType;
 import org.mskcc.cbio.oncokb.service.S3Service;
+import org.mskcc.cbio.oncokb.service.UsageSummaryStore;
 import org.mskcc.cbio.oncokb.service.UserService;
 import org.mskcc.cbio.oncokb.service.dto.CompanyDTO;
 import org.mskcc.cbio.oncokb.service.dto.UserDTO;
+import org.mskcc.cbio.oncokb.service.dto.UserIdsDTO;
 import org.mskcc.cbio.oncokb.service.mapper.UserMapper;
 import org.mskcc.cbio.oncokb.util.TimeUtil;
 import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.testcontainers.shaded.org.apache.commons.io.IOUtils;
@@ -77,6 +83,8 @@ public class UsageAnalysisControllerIT {
   @InjectMocks
   private UsageAnalysisController usageAnalysisController;
 
+  private UsageSummaryStore usageSummaryStore;
+
   private MockMvc restMockMvc;
 
   private final MockS3Data data = new MockS3Data(1, this.clock);
@@ -107,14 +115,28 @@ public class UsageAnalysisControllerIT {
       );
 
     Mockito
-      .when(userService.getUserWithAuthoritiesByEmailIgnoreCase(any()))
+      .when(userService.getUserIdsByEmailsIgnoreCase(any()))
       .thenAnswer(
         i -> {
-          String email = (String) i.getArguments()[0];
-          return data.users
-            .stream()
-            .filter(x -> x.getEmail().equalsIgnoreCase(email))
-            .findFirst();
+          Collection<String> emails = (Collection<String>) i.getArguments()[0];
+          Map<String, UserIdsDTO> userIds = new HashMap<>();
+          for (String email : emails) {
+            data.userDtos
+              .stream()
+              .filter(x -> x.getEmail().equalsIgnoreCase(email))
+              .findFirst()
+              .ifPresent(
+                x ->
+                  userIds.put(
+                    email,
+                    new UserIdsDTO(
+                      x.getId(),
+                      x.getCompany() != null ? x.getCompany().getId() : null
+                    )
+                  )
+              );
+          }
+          return userIds;
         }
       );
 
@@ -152,10 +174,27 @@ public class UsageAnalysisControllerIT {
     usageAnalysisController = new UsageAnalysisController();
     MockitoAnnotations.initMocks(this);
     this.mockS3ObjectResponse(data);
+    usageSummaryStore =
+      new UsageSummaryStore(
+        s3Service,
+        mockClock,
+        new ApplicationProperties(),
+        new SimpleMeterRegistry()
+      );
+    ReflectionTestUtils.setField(
+      usageAnalysisController,
+      "usageSummaryStore",
+      usageSummaryStore
+    );
     this.restMockMvc =
       MockMvcBuilders.standaloneSetup(usageAnalysisController).build();
   }
 
+  @AfterEach
+  public void tearDown() {
+    usageSummaryStore.destroy();
+  }
+
   @Test
   public void shouldGetUsageSummaryResources() throws Exception {
     String url = "/api/usage/summary/resources";